@@ -1,10 +1,11 @@
 package com.github.lpld.jeff_examples.tetris;
 
+import com.github.lpld.jeff.Scheduler;
 import com.github.lpld.jeff.Stream;
 import com.github.lpld.jeff.data.Pr;
 
 import java.util.Optional;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
 
 import io.vavr.collection.List;
 import io.vavr.control.Option;
@@ -122,20 +123,25 @@ public class Tetris {
    * Create a new tetris game of a given dimensions.
    *
    * @param interactions Stream of player's interactions.
+   * @param scheduler    Scheduler for the game ticks. Can be a
+   *                     {@link com.github.lpld.jeff.VirtualScheduler} to simulate the game.
+   * @param executor     Executor for merging ticks with player's interactions.
    */
-  public Tetris(int height, int width,
-                Stream<Move> interactions, ScheduledExecutorService scheduler) {
+  public Tetris(int height, int width, Stream<Move> interactions,
+                Scheduler scheduler, Executor executor) {
     this.height = height;
     this.width = width;
     this.interactions = interactions;
     this.scheduler = scheduler;
+    this.executor = executor;
     this.start = new Coord(0, width / 2 - 1);
   }
 
   private final int height;
   private final int width;
   private final Stream<Move> interactions;
-  private final ScheduledExecutorService scheduler;
+  private final Scheduler scheduler;
+  private final Executor executor;
   private final Coord start;
 
   /**
@@ -154,7 +160,7 @@ public class Tetris {
     final Stream<Event> userMoves = interactions.map(Event::userAction);
 
     // Merging them together:
-    final Stream<Event> allEvents = ticks.merge(scheduler, userMoves);
+    final Stream<Event> allEvents = ticks.merge(executor, userMoves);
 
     final GameState initial = new GameState(
         Status.ACTIVE,
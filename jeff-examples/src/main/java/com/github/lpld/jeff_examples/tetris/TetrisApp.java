@@ -1,6 +1,7 @@
 package com.github.lpld.jeff_examples.tetris;
 
 import com.github.lpld.jeff.IO;
+import com.github.lpld.jeff.Scheduler;
 import com.github.lpld.jeff.data.Unit;
 import com.github.lpld.jeff_examples.tetris.Tetris.GameState;
 
@@ -30,7 +31,8 @@ public class TetrisApp {
       // input needs an executor, because it uses blocking IO.
       final PlayerInput playerInput = new PlayerInput(userInputExecutor);
 
-      final Tetris tetris = new Tetris(HEIGHT, WIDTH, playerInput.getInteractions(), scheduler);
+      final Tetris tetris = new Tetris(HEIGHT, WIDTH, playerInput.getInteractions(),
+                                     Scheduler.of(scheduler), scheduler);
 
       eraseScreen
           // taking the stream of game states
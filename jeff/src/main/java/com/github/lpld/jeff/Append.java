@@ -0,0 +1,132 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+import com.github.lpld.jeff.functions.Fn2;
+
+import java.util.Optional;
+
+import lombok.RequiredArgsConstructor;
+
+import static com.github.lpld.jeff.IO.IO;
+import static com.github.lpld.jeff.IO.suspend;
+
+/**
+ * Concatenation of two streams. Appending is O(1): nothing is copied, and the node is only
+ * unwrapped by one step when the stream is actually consumed.
+ */
+@RequiredArgsConstructor
+class Append<T> extends Stream<T> {
+
+  final Stream<T> left;
+  final Stream<T> right;
+
+  /**
+   * The same stream with a non-append node on top. Left-nested appends are rotated to the right
+   * on the way, so that each of them is unwrapped only once:
+   * {@code (a ++ b) ++ c} becomes {@code a ++ (b ++ c)}.
+   */
+  @SuppressWarnings("unchecked")
+  Stream<T> step() {
+    Stream<T> first = left;
+    Stream<T> rest = right;
+
+    while (first instanceof Append) {
+      final Append<T> append = (Append<T>) first;
+      rest = new Append<>(append.right, rest);
+      first = append.left;
+    }
+
+    if (first instanceof Fused) {
+      first = ((Fused<?, T>) first).materialize();
+    }
+
+    final Stream<T> others = rest;
+
+    if (first instanceof Cons) {
+      final Cons<T> cons = (Cons<T>) first;
+      return new Cons<>(cons.head, cons.tail.append(others));
+    }
+    if (first instanceof PureCons) {
+      final PureCons<T> cons = (PureCons<T>) first;
+      return new PureCons<>(cons.head, cons.tail.append(others));
+    }
+    if (first instanceof ChunkCons) {
+      final ChunkCons<T> cons = (ChunkCons<T>) first;
+      return new ChunkCons<>(cons.chunk, cons.tail.append(others));
+    }
+    if (first instanceof Defer) {
+      return Defer(((Defer<T>) first).evalStream.map(s -> s.append(others)));
+    }
+    return others;
+  }
+
+  @Override
+  <R> IO<R> doFoldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f) {
+    return step().doFoldRight(z, f);
+  }
+
+  @Override
+  <R> IO<R> doCollectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f) {
+    return step().doCollectRight(z, f);
+  }
+
+  @Override
+  public <R> Stream<R> scanLeft(R z, Fn2<R, T, R> f) {
+    return step().scanLeft(z, f);
+  }
+
+  @Override
+  <R> IO<R> doCollectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f) {
+    return step().doCollectLeft(z, f);
+  }
+
+  @Override
+  public Stream<T> take(int n) {
+    return n <= 0 ? Nil() : step().take(n);
+  }
+
+  @Override
+  public Stream<T> drop(int n) {
+    return n <= 0 ? this : step().drop(n);
+  }
+
+  @Override
+  public Stream<T> dropWhile(Fn<T, Boolean> p) {
+    return step().dropWhile(p);
+  }
+
+  @Override
+  public <U> Stream<U> flatMap(Fn<T, Stream<U>> f) {
+    return step().flatMap(f);
+  }
+
+  @Override
+  public <U> Stream<U> mapEval(Fn<T, IO<U>> f) {
+    return step().mapEval(f);
+  }
+
+  @Override
+  public Stream<Chunk<T>> chunks() {
+    return step().chunks();
+  }
+
+  @Override
+  IO<Optional<IO<T>>> doLazyHead() {
+    return suspend(() -> step().doLazyHead());
+  }
+
+  @Override
+  IO<Optional<T>> doHeadOption() {
+    return suspend(() -> step().doHeadOption());
+  }
+
+  @Override
+  IO<Optional<Cons<T>>> extract() {
+    return suspend(() -> step().extract());
+  }
+
+  @Override
+  public String toString() {
+    return "Append(" + left + "," + right + ")";
+  }
+}
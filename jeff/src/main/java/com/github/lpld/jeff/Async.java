@@ -0,0 +1,24 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * IO node that suspends the run loop until the callback receives the result. The function
+ * registers the callback and returns an IO that cancels the registration.
+ *
+ * @author leopold
+ * @since 4/10/18
+ */
+@RequiredArgsConstructor
+class Async<T> extends IO<T> {
+
+  // (T => Unit, Throwable => Unit) => IO<cancel>
+  final Fn<AsyncCallback<T>, IO<?>> cb;
+
+  @Override
+  public String toString() {
+    return "async(.)";
+  }
+}
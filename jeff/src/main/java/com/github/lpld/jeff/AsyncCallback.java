@@ -0,0 +1,102 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Or;
+import com.github.lpld.jeff.functions.Run1;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Single-assignment cell that receives the result of an {@link Async} node.
+ *
+ * The first call to the callback wins, all subsequent calls are ignored. If the callback is
+ * called after the run loop has suspended, the loop is resumed on the calling thread. If it is
+ * called while the async action is still being registered, the result is left in the cell and
+ * the run loop picks it up itself, so that synchronous callbacks don't grow the stack.
+ */
+final class AsyncCallback<T> implements Callback<T>, Run1<Or<Throwable, T>> {
+
+  private static final int COMPLETING = 1;
+  private static final int COMPLETED = 2;
+  private static final int SUSPENDED = 4;
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicIntegerFieldUpdater<AsyncCallback> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(AsyncCallback.class, "state");
+
+  private final RunLoop runLoop;
+  private volatile int state = 0;
+
+  T value;
+  Throwable error;
+
+  AsyncCallback(RunLoop runLoop) {
+    this.runLoop = runLoop;
+  }
+
+  @Override
+  public void success(T value) {
+    if (claim()) {
+      this.value = value;
+      complete();
+    }
+  }
+
+  @Override
+  public void failure(Throwable err) {
+    if (claim()) {
+      this.error = err;
+      complete();
+    }
+  }
+
+  @Override
+  public void run(Or<Throwable, T> result) {
+    if (result.isLeft()) {
+      failure(result.getLeft());
+    } else {
+      success(result.getRight());
+    }
+  }
+
+  /**
+   * Executor of the run loop that waits for this callback (see {@link RunLoop#executor()}). Can
+   * only be called while the async action is being registered.
+   */
+  Executor executor() {
+    return runLoop.executor();
+  }
+
+  /**
+   * Scope of the run loop that waits for this callback (see {@link RunLoop#scope()}).
+   */
+  Scope scope() {
+    return runLoop.scope();
+  }
+
+  /**
+   * Called by the run loop after the async action is registered. Returns {@code false} if the
+   * result is already available.
+   */
+  boolean suspend() {
+    return (STATE.getAndAdd(this, SUSPENDED) & COMPLETED) == 0;
+  }
+
+  private boolean claim() {
+    while (true) {
+      final int st = state;
+      if ((st & COMPLETING) != 0) {
+        return false;
+      }
+      if (STATE.compareAndSet(this, st, st | COMPLETING)) {
+        return true;
+      }
+    }
+  }
+
+  private void complete() {
+    if ((STATE.getAndAdd(this, COMPLETED) & SUSPENDED) != 0) {
+      runLoop.resume(this);
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * IO node of {@link IO#flatMap}.
+ *
+ * @author leopold
+ * @since 4/10/18
+ */
+@RequiredArgsConstructor
+class Bind<T, U> extends IO<U> {
+  final IO<T> source;
+  final Fn<T, IO<U>> f;
+
+  @Override
+  public String toString() {
+    return "Bind(" + source + ", .)";
+  }
+}
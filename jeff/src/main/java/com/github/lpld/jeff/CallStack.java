@@ -0,0 +1,57 @@
+package com.github.lpld.jeff;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Growable array of pending continuations ({@link Bind} and {@link Map} nodes) and error handlers
+ * ({@link Recover} nodes) that the run loop pushes and pops instead of re-associating binds.
+ */
+class CallStack {
+
+  private static final int INITIAL_SIZE = 16;
+
+  private IO<?>[] frames = new IO<?>[INITIAL_SIZE];
+  private int size = 0;
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void push(IO<?> frame) {
+    if (size == frames.length) {
+      frames = Arrays.copyOf(frames, size << 1);
+    }
+    frames[size++] = frame;
+  }
+
+  /**
+   * Pop frames until an error handler that accepts {@code err} is found. Continuations that are
+   * met on the way are discarded. Returns {@code null} if no handler accepts the error.
+   */
+  IO<Object> recover(Throwable err) {
+    while (size > 0) {
+      final IO<Object> frame = pop();
+
+      if (frame instanceof Recover) {
+        try {
+          final Optional<IO<Object>> result = ((Recover<Object>) frame).recover.apply(err);
+
+          if (result.isPresent()) {
+            return result.get();
+          }
+        } catch (Throwable recoveryErr) {
+          return IO.fail(() -> recoveryErr);
+        }
+      }
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  IO<Object> pop() {
+    final IO<Object> frame = (IO<Object>) frames[--size];
+    frames[size] = null;
+    return frame;
+  }
+}
@@ -0,0 +1,42 @@
+package com.github.lpld.jeff;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Receives the outcome of a running IO.
+ */
+interface Callback<T> {
+
+  void success(T value);
+
+  void failure(Throwable err);
+
+  @SuppressWarnings("unchecked")
+  static <T> Callback<T> ignore() {
+    return (Callback<T>) IGNORE;
+  }
+
+  Callback<Object> IGNORE = new Callback<Object>() {
+    @Override
+    public void success(Object value) {
+    }
+
+    @Override
+    public void failure(Throwable err) {
+    }
+  };
+
+  static <T> Callback<T> completing(CompletableFuture<T> promise) {
+    return new Callback<T>() {
+      @Override
+      public void success(T value) {
+        promise.complete(value);
+      }
+
+      @Override
+      public void failure(Throwable err) {
+        promise.completeExceptionally(err);
+      }
+    };
+  }
+}
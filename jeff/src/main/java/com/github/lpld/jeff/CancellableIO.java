@@ -0,0 +1,16 @@
+package com.github.lpld.jeff;
+
+/**
+ * Cancellation token of a running IO that can be cancelled.
+ *
+ * @author leopold
+ * @since 20/10/18
+ */
+interface CancellableIO extends RunningIO {
+
+  void cancel();
+
+  static CancellableIO create() {
+    return new CancellableIOTask();
+  }
+}
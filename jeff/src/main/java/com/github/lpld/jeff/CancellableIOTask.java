@@ -0,0 +1,118 @@
+package com.github.lpld.jeff;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Lock-free cancellation state machine. The state is an int updated with CAS, so async
+ * boundaries don't allocate anything.
+ *
+ * No cancellation request is ever lost: {@link #cancel()} retries until it moves the task to
+ * the CANCELLED state, and in every state there is exactly one party that reacts to it:
+ * <ul>
+ * <li>RUNNING: the run loop will stop at the next async boundary
+ * ({@link #suspending()} returns false);</li>
+ * <li>SUSPENDING (async action is being registered): the run loop executes the cancel action
+ * as soon as the registration is over ({@link #suspended} returns false);</li>
+ * <li>SUSPENDED: {@link #cancel()} itself executes the cancel action and, when it's done,
+ * completes the IO with {@link java.util.concurrent.CancellationException}; a result that
+ * arrives later is dropped ({@link #resumed()} returns false).</li>
+ * </ul>
+ */
+class CancellableIOTask implements CancellableIO {
+
+  private static final int RUNNING = 0;
+  private static final int SUSPENDING = 1;
+  private static final int SUSPENDED = 2;
+  private static final int CANCELLED = 3;
+
+  private static final AtomicIntegerFieldUpdater<CancellableIOTask> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(CancellableIOTask.class, "state");
+
+  private volatile int state = RUNNING;
+
+  // written before the transition to SUSPENDED and read only after it:
+  private RunLoop runLoop;
+  private IO<?> cancelAction;
+
+  @Override
+  public boolean suspending() {
+    return STATE.compareAndSet(this, RUNNING, SUSPENDING);
+  }
+
+  @Override
+  public boolean suspended(RunLoop runLoop, IO<?> cancelAction) {
+    this.runLoop = runLoop;
+    this.cancelAction = cancelAction;
+
+    if (STATE.compareAndSet(this, SUSPENDING, SUSPENDED)) {
+      return true;
+    }
+
+    // cancelled during the registration:
+    clear();
+    runCancelAction(runLoop, cancelAction);
+    return false;
+  }
+
+  @Override
+  public boolean resumed() {
+    while (true) {
+      final int st = state;
+
+      if (st == CANCELLED) {
+        return false;
+      }
+
+      if (STATE.compareAndSet(this, st, RUNNING)) {
+        clear();
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public void cancel() {
+    while (true) {
+      final int st = state;
+
+      if (st == CANCELLED) {
+        return;
+      }
+
+      if (STATE.compareAndSet(this, st, CANCELLED)) {
+        if (st == SUSPENDED) {
+          final RunLoop loop = runLoop;
+          final IO<?> action = cancelAction;
+          clear();
+          runCancelAction(loop, action);
+        }
+        return;
+      }
+    }
+  }
+
+  private void clear() {
+    runLoop = null;
+    cancelAction = null;
+  }
+
+  /**
+   * Run the cancel action and complete the cancelled loop when it's done. If the action fails,
+   * the error is reported as the cause of the {@link java.util.concurrent.CancellationException}.
+   */
+  private static <T> void runCancelAction(RunLoop runLoop, IO<T> cancelAction) {
+    final Callback<T> complete = new Callback<T>() {
+      @Override
+      public void success(T value) {
+        runLoop.cancelled();
+      }
+
+      @Override
+      public void failure(Throwable err) {
+        runLoop.cancelled(err);
+      }
+    };
+    IORun.runAsync(cancelAction, UncancellableIOTask.INSTANCE, complete);
+  }
+}
@@ -0,0 +1,193 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+import com.github.lpld.jeff.functions.Fn2;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable array-backed sequence of already evaluated values. Chunks are the unit of
+ * {@link Stream} evaluation that lets stream operations process many elements in a tight loop
+ * instead of paying for stream nodes and IO evaluation per element.
+ *
+ * {@code take} and {@code drop} are views of the same array, so they are O(1).
+ *
+ * A chunk is strict: {@code map} and {@code filter} apply the function to all the elements right
+ * away, and if it throws, the whole call fails. Stream operators that process chunks in a loop
+ * don't fail the whole chunk: the values computed before the failure are still emitted.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+public final class Chunk<T> implements Iterable<T> {
+
+  /**
+   * Size of the chunks that are produced by lazy stream sources.
+   */
+  static final int DEFAULT_SIZE = 1024;
+
+  private static final Chunk<?> EMPTY = new Chunk<>(new Object[0], 0, 0);
+
+  private final Object[] values;
+  private final int offset;
+  private final int size;
+
+  private Chunk(Object[] values, int offset, int size) {
+    this.values = values;
+    this.offset = offset;
+    this.size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> Chunk<T> empty() {
+    return (Chunk<T>) EMPTY;
+  }
+
+  @SafeVarargs
+  public static <T> Chunk<T> of(T... values) {
+    return values.length == 0 ? empty() : new Chunk<>(values.clone(), 0, values.length);
+  }
+
+  public static <T> Chunk<T> ofAll(Collection<? extends T> values) {
+    return values.isEmpty() ? empty() : new Chunk<>(values.toArray(), 0, values.size());
+  }
+
+  public static <T> Chunk<T> ofAll(Iterable<? extends T> values) {
+    if (values instanceof Collection) {
+      return ofAll((Collection<? extends T>) values);
+    }
+
+    Object[] array = new Object[16];
+    int size = 0;
+    for (T value : values) {
+      if (size == array.length) {
+        array = Arrays.copyOf(array, size << 1);
+      }
+      array[size++] = value;
+    }
+    return wrap(array, 0, size);
+  }
+
+  /**
+   * Chunk view of an array, without copying it. The array must not be modified afterwards.
+   */
+  static <T> Chunk<T> wrap(Object[] values, int offset, int size) {
+    return size == 0 ? empty() : new Chunk<>(values, offset, size);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  public T get(int idx) {
+    if (idx < 0 || idx >= size) {
+      throw new IndexOutOfBoundsException("Index: " + idx + ", size: " + size);
+    }
+    return (T) values[offset + idx];
+  }
+
+  public Chunk<T> take(int n) {
+    return n >= size ? this : wrap(values, offset, Math.max(n, 0));
+  }
+
+  public Chunk<T> drop(int n) {
+    return n <= 0 ? this : wrap(values, offset + Math.min(n, size), Math.max(size - n, 0));
+  }
+
+  @SuppressWarnings("unchecked")
+  public <U> Chunk<U> map(Fn<T, U> f) {
+    final Object[] result = new Object[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = f.ap((T) values[offset + i]);
+    }
+    return wrap(result, 0, size);
+  }
+
+  @SuppressWarnings("unchecked")
+  public Chunk<T> filter(Fn<T, Boolean> p) {
+    Object[] result = null;
+    int count = 0;
+
+    for (int i = 0; i < size; i++) {
+      final T value = (T) values[offset + i];
+
+      if (p.ap(value)) {
+        if (result != null) {
+          result[count] = value;
+        }
+        count++;
+      } else if (result == null) {
+        // first rejected element: from now on we need a copy
+        result = new Object[size - 1];
+        System.arraycopy(values, offset, result, 0, count);
+      }
+    }
+
+    return result == null ? this : wrap(result, 0, count);
+  }
+
+  @SuppressWarnings("unchecked")
+  public <R> R foldLeft(R z, Fn2<R, T, R> f) {
+    R acc = z;
+    for (int i = 0; i < size; i++) {
+      acc = f.ap(acc, (T) values[offset + i]);
+    }
+    return acc;
+  }
+
+  /**
+   * Index of the first element that does not satisfy {@code p}, or size of the chunk if all of
+   * them do.
+   */
+  @SuppressWarnings("unchecked")
+  int prefixLength(Fn<T, Boolean> p) {
+    for (int i = 0; i < size; i++) {
+      if (!p.ap((T) values[offset + i])) {
+        return i;
+      }
+    }
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  public List<T> toList() {
+    return size == 0 ? Collections.emptyList()
+                     : (List<T>) Arrays.asList(Arrays.copyOfRange(values, offset, offset + size));
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int idx = 0;
+
+      @Override
+      public boolean hasNext() {
+        return idx < size;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public T next() {
+        if (idx >= size) {
+          throw new NoSuchElementException();
+        }
+        return (T) values[offset + idx++];
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "Chunk" + toList();
+  }
+}
@@ -0,0 +1,150 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+import com.github.lpld.jeff.functions.Fn2;
+
+import java.util.Optional;
+
+import static com.github.lpld.jeff.IO.IO;
+import static com.github.lpld.jeff.IO.pure;
+import static com.github.lpld.jeff.IO.suspend;
+
+/**
+ * Stream node that holds a non-empty chunk of already evaluated values. Operations that don't
+ * need to evaluate anything per element process the whole chunk in one go.
+ */
+class ChunkCons<T> extends Stream<T> {
+
+  final Chunk<T> chunk;
+  final Stream<T> tail;
+
+  ChunkCons(Chunk<T> chunk, Stream<T> tail) {
+    this.chunk = chunk;
+    this.tail = tail;
+  }
+
+  /**
+   * The same stream as a {@link PureCons} of the first element and the rest.
+   */
+  PureCons<T> uncons() {
+    return new PureCons<>(chunk.get(0), ChunkCons(chunk.drop(1), tail));
+  }
+
+  @Override
+  <R> IO<R> doFoldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f) {
+    return doFoldRight(0, z, f);
+  }
+
+  private <R> IO<R> doFoldRight(int idx, IO<R> z, Fn2<T, IO<R>, IO<R>> f) {
+    return idx == chunk.size()
+           ? tail.doFoldRight(z, f)
+           : suspend(() -> f.ap(chunk.get(idx), doFoldRight(idx + 1, z, f)));
+  }
+
+  @Override
+  <R> IO<R> doCollectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f) {
+    return doCollectRight(0, z, f);
+  }
+
+  private <R> IO<R> doCollectRight(int idx, IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f) {
+    return idx == chunk.size()
+           ? tail.doCollectRight(z, f)
+           : suspend(() -> f.ap(pure(chunk.get(idx)), doCollectRight(idx + 1, z, f)));
+  }
+
+  @Override
+  public <R> Stream<R> scanLeft(R z, Fn2<R, T, R> f) {
+    return Lazy(() -> {
+      final Object[] scanned = new Object[chunk.size()];
+      R acc = z;
+      for (int i = 0; i < scanned.length; i++) {
+        try {
+          acc = f.ap(acc, chunk.get(i));
+        } catch (Throwable err) {
+          return failAfter(Chunk.wrap(scanned, 0, i), err);
+        }
+        scanned[i] = acc;
+      }
+      return ChunkCons(Chunk.wrap(scanned, 0, scanned.length), tail.scanLeft(acc, f));
+    });
+  }
+
+  @Override
+  <R> IO<R> doCollectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f) {
+    IO<R> acc = z;
+    for (int i = 0; i < chunk.size(); i++) {
+      final IO<R> prev = acc;
+      final T elem = chunk.get(i);
+      acc = suspend(() -> f.ap(prev, pure(elem)));
+    }
+    return tail.doCollectLeft(acc, f);
+  }
+
+  @Override
+  public Stream<T> take(int n) {
+    if (n <= 0) {
+      return Nil();
+    }
+    if (n <= chunk.size()) {
+      return ChunkCons(chunk.take(n), Nil());
+    }
+    return ChunkCons(chunk, tail.lazyTransform(s -> s.take(n - chunk.size())));
+  }
+
+  @Override
+  public Stream<T> drop(int n) {
+    if (n <= 0) {
+      return this;
+    }
+    if (n < chunk.size()) {
+      return ChunkCons(chunk.drop(n), tail);
+    }
+    return tail.lazyTransform(s -> s.drop(n - chunk.size()));
+  }
+
+  @Override
+  public Stream<T> dropWhile(Fn<T, Boolean> p) {
+    return Lazy(() -> {
+      final int prefix = chunk.prefixLength(p);
+
+      return prefix == chunk.size()
+             ? tail.dropWhile(p)
+             : ChunkCons(chunk.drop(prefix), tail);
+    });
+  }
+
+  @Override
+  public <U> Stream<U> flatMap(Fn<T, Stream<U>> f) {
+    return uncons().flatMap(f);
+  }
+
+  @Override
+  public <U> Stream<U> mapEval(Fn<T, IO<U>> f) {
+    return uncons().mapEval(f);
+  }
+
+  @Override
+  public Stream<Chunk<T>> chunks() {
+    return Cons(chunk, tail.lazyTransform(Stream::chunks));
+  }
+
+  @Override
+  IO<Optional<IO<T>>> doLazyHead() {
+    return pure(Optional.of(pure(chunk.get(0))));
+  }
+
+  @Override
+  IO<Optional<T>> doHeadOption() {
+    return pure(Optional.of(chunk.get(0)));
+  }
+
+  @Override
+  IO<Optional<Cons<T>>> extract() {
+    return uncons().extract();
+  }
+
+  @Override
+  public String toString() {
+    return "ChunkCons(" + chunk + "," + tail + ")";
+  }
+}
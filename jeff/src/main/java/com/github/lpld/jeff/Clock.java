@@ -0,0 +1,23 @@
+package com.github.lpld.jeff;
+
+/**
+ * Source of monotonic time, in the same units and with the same semantics as
+ * {@link System#nanoTime()}. Every {@link Scheduler} has a clock, and time-based operations
+ * that measure intervals use it instead of reading the system time directly, so that they also
+ * work with {@link VirtualScheduler}.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+@FunctionalInterface
+public interface Clock {
+
+  long nanoTime();
+
+  /**
+   * Clock that is backed by {@link System#nanoTime()}.
+   */
+  static Clock system() {
+    return System::nanoTime;
+  }
+}
@@ -0,0 +1,100 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+import com.github.lpld.jeff.functions.Fn2;
+
+import java.util.Optional;
+
+import lombok.RequiredArgsConstructor;
+
+import static com.github.lpld.jeff.IO.IO;
+import static com.github.lpld.jeff.IO.pure;
+import static com.github.lpld.jeff.IO.suspend;
+
+/**
+ * Stream node with a head that is evaluated by an IO.
+ *
+ * @author leopold
+ * @since 10/10/18
+ */
+@RequiredArgsConstructor
+class Cons<T> extends Stream<T> {
+
+  final IO<T> head;
+  final Stream<T> tail;
+
+  @Override
+  <R> IO<R> doFoldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f) {
+    return head.flatMap(h -> f.ap(h, tail.doFoldRight(z, f)));
+  }
+
+  @Override
+  <R> IO<R> doCollectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f) {
+    return suspend(() -> f.ap(head, tail.doCollectRight(z, f)));
+  }
+
+  @Override
+  public <R> Stream<R> scanLeft(R z, Fn2<R, T, R> f) {
+    return Defer(head.map(h -> {
+      final R r = f.ap(z, h);
+
+      return Cons(r, tail.scanLeft(r, f));
+    }));
+  }
+
+  @Override
+  <R> IO<R> doCollectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f) {
+    return tail.doCollectLeft(suspend(() -> f.ap(z, head)), f);
+  }
+
+  @Override
+  public Stream<T> take(int n) {
+    return n == 0 ? Nil() : SCons(head, tail.lazyTransform(s -> s.take(n - 1)));
+  }
+
+  @Override
+  public Stream<T> drop(int n) {
+    return n == 0 ? this : tail.lazyTransform(s -> s.drop(n - 1));
+  }
+
+  @Override
+  public Stream<T> dropWhile(Fn<T, Boolean> p) {
+    return Defer(head.map(h -> p.ap(h) ? tail.dropWhile(p) : this));
+  }
+
+  @Override
+  public <U> Stream<U> flatMap(Fn<T, Stream<U>> f) {
+    return Defer(head.map(h -> f.ap(h).append(tail.flatMap(f))));
+  }
+
+  @Override
+  public <U> Stream<U> mapEval(Fn<T, IO<U>> f) {
+    return SCons(head.flatMap(f), tail.lazyTransform(s -> s.mapEval(f)));
+  }
+
+  @Override
+  public Stream<Chunk<T>> chunks() {
+    return SCons(head.map(h -> Chunk.wrap(new Object[]{h}, 0, 1)),
+                 tail.lazyTransform(Stream::chunks));
+  }
+
+  @Override
+  IO<Optional<IO<T>>> doLazyHead() {
+    return pure(Optional.of(head));
+  }
+
+  @Override
+  IO<Optional<T>> doHeadOption() {
+    return head.map(Optional::of);
+  }
+
+  @Override
+  IO<Optional<Cons<T>>> extract() {
+    return pure(Optional.of(this));
+  }
+
+  @Override
+  public String toString() {
+    return "Cons(" + head + "," + tail + ")";
+  }
+}
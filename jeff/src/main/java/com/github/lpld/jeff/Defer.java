@@ -0,0 +1,92 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+import com.github.lpld.jeff.functions.Fn2;
+
+import java.util.Optional;
+
+import lombok.RequiredArgsConstructor;
+
+import static com.github.lpld.jeff.IO.IO;
+
+/**
+ * Stream node that is produced by an IO.
+ *
+ * @author leopold
+ * @since 10/10/18
+ */
+@RequiredArgsConstructor
+class Defer<T> extends Stream<T> {
+
+  final IO<Stream<T>> evalStream;
+
+  @Override
+  <R> IO<R> doFoldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f) {
+    return evalStream.flatMap(s -> s.doFoldRight(z, f));
+  }
+
+  @Override
+  <R> IO<R> doCollectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f) {
+    return evalStream.flatMap(s -> s.doCollectRight(z, f));
+  }
+
+  @Override
+  public <R> Stream<R> scanLeft(R z, Fn2<R, T, R> f) {
+    return Defer(evalStream.map(s -> s.scanLeft(z, f)));
+  }
+
+  @Override
+  <R> IO<R> doCollectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f) {
+    return evalStream.flatMap(s -> s.doCollectLeft(z, f));
+  }
+
+  @Override
+  public Stream<T> take(int n) {
+    return n <= 0 ? Nil() : Defer(evalStream.map(s -> s.take(n)));
+  }
+
+  @Override
+  public Stream<T> drop(int n) {
+    return Defer(evalStream.map(s -> s.drop(n)));
+  }
+
+  @Override
+  public Stream<T> dropWhile(Fn<T, Boolean> p) {
+    return Defer(evalStream.map(s -> s.dropWhile(p)));
+  }
+
+  @Override
+  public <U> Stream<U> flatMap(Fn<T, Stream<U>> f) {
+    return Defer(evalStream.map(s -> s.flatMap(f)));
+  }
+
+  @Override
+  public <U> Stream<U> mapEval(Fn<T, IO<U>> f) {
+    return Defer(evalStream.map(s -> s.mapEval(f)));
+  }
+
+  @Override
+  public Stream<Chunk<T>> chunks() {
+    return Defer(evalStream.map(Stream::chunks));
+  }
+
+  @Override
+  IO<Optional<IO<T>>> doLazyHead() {
+    return evalStream.flatMap(Stream::doLazyHead);
+  }
+
+  @Override
+  IO<Optional<T>> doHeadOption() {
+    return evalStream.flatMap(Stream::doHeadOption);
+  }
+
+  @Override
+  IO<Optional<Cons<T>>> extract() {
+    return evalStream.flatMap(Stream::extract);
+  }
+
+  @Override
+  public String toString() {
+    return "Defer(" + evalStream + ")";
+  }
+}
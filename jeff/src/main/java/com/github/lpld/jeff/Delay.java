@@ -0,0 +1,22 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Xn0;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * IO node of {@link IO#delay}: a side-effecting computation of the value.
+ *
+ * @author leopold
+ * @since 4/10/18
+ */
+@RequiredArgsConstructor
+class Delay<T> extends IO<T> {
+
+  final Xn0<T> thunk;
+
+  @Override
+  public String toString() {
+    return "delay(.)";
+  }
+}
@@ -0,0 +1,199 @@
+package com.github.lpld.jeff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+
+import static com.github.lpld.jeff.Stream.Cons;
+import static com.github.lpld.jeff.Stream.Lazy;
+import static com.github.lpld.jeff.Stream.Nil;
+
+/**
+ * Stream of primitive {@code double} values.
+ *
+ * It is a {@link Stream} of {@code double[]} chunks under the hood: all the operations work on
+ * the whole chunks in tight loops, and the values are never boxed unless the stream is
+ * converted with {@link #boxed()} or {@link #mapToObj(DoubleFunction)}. The arrays are never
+ * modified after they have been put into the stream.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+public final class DoubleStream {
+
+  final Stream<double[]> chunks;
+
+  DoubleStream(Stream<double[]> chunks) {
+    this.chunks = chunks;
+  }
+
+  /**
+   * Stream of the given values.
+   */
+  public static DoubleStream of(double... values) {
+    return new DoubleStream(values.length == 0 ? Nil() : Cons(values.clone(), Nil()));
+  }
+
+  /**
+   * Stream of the values from {@code from} (inclusive) to {@code until} (exclusive), that are
+   * {@code step} apart. Every value is computed as {@code from + i * step}, so that the rounding
+   * errors don't add up along the stream.
+   */
+  public static DoubleStream range(double from, double until, double step) {
+    if (!(step > 0)) {
+      throw new IllegalArgumentException("step must be positive: " + step);
+    }
+    long count = from < until ? (long) Math.ceil((until - from) / step) : 0;
+    // the division may round up:
+    while (count > 0 && from + (count - 1) * step >= until) {
+      count--;
+    }
+    return new DoubleStream(rangeChunks(from, step, 0, count));
+  }
+
+  private static Stream<double[]> rangeChunks(double from, double step, long start, long count) {
+    return Lazy(() -> {
+      if (start >= count) {
+        return Nil();
+      }
+      final int size = (int) Math.min(Chunk.DEFAULT_SIZE, count - start);
+      final double[] chunk = new double[size];
+      for (int i = 0; i < size; i++) {
+        chunk[i] = from + (start + i) * step;
+      }
+      return Cons(chunk, rangeChunks(from, step, start + size, count));
+    });
+  }
+
+  public DoubleStream map(DoubleUnaryOperator f) {
+    return new DoubleStream(chunks.map(chunk -> {
+      final double[] result = new double[chunk.length];
+      for (int i = 0; i < chunk.length; i++) {
+        result[i] = f.applyAsDouble(chunk[i]);
+      }
+      return result;
+    }));
+  }
+
+  public DoubleStream filter(DoublePredicate p) {
+    return new DoubleStream(chunks
+                             .map(chunk -> {
+                               final double[] result = new double[chunk.length];
+                               int size = 0;
+                               for (double value : chunk) {
+                                 if (p.test(value)) {
+                                   result[size++] = value;
+                                 }
+                               }
+                               return size == chunk.length ? chunk : Arrays.copyOf(result, size);
+                             })
+                             .filter(chunk -> chunk.length > 0));
+  }
+
+  public DoubleStream take(long n) {
+    return new DoubleStream(n <= 0 ? Nil() : new Fused<>(chunks, taking(n), false));
+  }
+
+  /**
+   * Stage that passes the chunks through until {@code n} values have been taken, cutting the last
+   * chunk, and stops there.
+   */
+  private static Fused.Stage<double[], double[]> taking(long n) {
+    return downstream -> new Fused.Sink<double[]>() {
+      private long left = n;
+
+      @Override
+      public boolean push(double[] chunk) {
+        if (chunk.length >= left) {
+          downstream.push(chunk.length == left ? chunk : Arrays.copyOf(chunk, (int) left));
+          return false;
+        }
+        left -= chunk.length;
+        return downstream.push(chunk);
+      }
+    };
+  }
+
+  public DoubleStream drop(long n) {
+    return new DoubleStream(n <= 0 ? chunks : new Fused<>(chunks, dropping(n), false));
+  }
+
+  /**
+   * Stage that skips the chunks until {@code n} values have been dropped, cutting the first chunk
+   * that is passed through.
+   */
+  private static Fused.Stage<double[], double[]> dropping(long n) {
+    return downstream -> new Fused.Sink<double[]>() {
+      private long left = n;
+
+      @Override
+      public boolean push(double[] chunk) {
+        if (left == 0) {
+          return downstream.push(chunk);
+        }
+        if (chunk.length <= left) {
+          left -= chunk.length;
+          return true;
+        }
+        final int from = (int) left;
+        left = 0;
+        return downstream.push(Arrays.copyOfRange(chunk, from, chunk.length));
+      }
+    };
+  }
+
+  public IO<Double> fold(double z, DoubleBinaryOperator f) {
+    return chunks.foldLeft(z, (acc, chunk) -> {
+      double result = acc;
+      for (double value : chunk) {
+        result = f.applyAsDouble(result, value);
+      }
+      return result;
+    });
+  }
+
+  public IO<Double> sum() {
+    return fold(0, Double::sum);
+  }
+
+  public IO<Long> count() {
+    return chunks.foldLeft(0L, (acc, chunk) -> acc + chunk.length);
+  }
+
+  public IO<double[]> toArray() {
+    return IO.suspend(() -> chunks.foldLeft(new ArrayList<double[]>(), (acc, chunk) -> {
+      acc.add(chunk);
+      return acc;
+    })).map(list -> {
+      final double[] result = new double[list.stream().mapToInt(chunk -> chunk.length).sum()];
+      int pos = 0;
+      for (double[] chunk : list) {
+        System.arraycopy(chunk, 0, result, pos, chunk.length);
+        pos += chunk.length;
+      }
+      return result;
+    });
+  }
+
+  public <U> Stream<U> mapToObj(DoubleFunction<U> f) {
+    return Stream.fromChunks(chunks.map(chunk -> {
+      final Object[] result = new Object[chunk.length];
+      for (int i = 0; i < chunk.length; i++) {
+        result[i] = f.apply(chunk[i]);
+      }
+      return Chunk.<U>wrap(result, 0, result.length);
+    }));
+  }
+
+  public Stream<Double> boxed() {
+    return mapToObj(Double::valueOf);
+  }
+
+  @Override
+  public String toString() {
+    return "DoubleStream(" + chunks + ")";
+  }
+}
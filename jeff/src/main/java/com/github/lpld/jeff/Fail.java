@@ -0,0 +1,22 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn0;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * IO node that fails with an error.
+ *
+ * @author leopold
+ * @since 4/10/18
+ */
+@RequiredArgsConstructor
+class Fail<T> extends IO<T> {
+
+  final Fn0<Throwable> err;
+
+  @Override
+  public String toString() {
+    return "fail(" + err + ")";
+  }
+}
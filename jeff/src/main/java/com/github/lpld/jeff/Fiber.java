@@ -0,0 +1,30 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Unit;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Handle of an IO that has been started concurrently with {@link IO#start}.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+public abstract class Fiber<T> {
+
+  /**
+   * IO that waits for the fiber to complete and returns its result. If the fiber fails,
+   * the IO fails with the same error. If the fiber is cancelled, the IO fails with
+   * {@link java.util.concurrent.CancellationException}.
+   */
+  public abstract IO<T> join();
+
+  /**
+   * IO that requests cancellation of the fiber. Cancellation follows the same rules as
+   * in {@link IO#race}: a cancellable async task is cancelled right away, otherwise the fiber
+   * stops at the next async boundary.
+   */
+  public abstract IO<Unit> cancel();
+}
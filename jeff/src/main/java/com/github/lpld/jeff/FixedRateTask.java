@@ -0,0 +1,74 @@
+package com.github.lpld.jeff;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Periodic task on top of a one-shot {@link Scheduler}. Every execution is scheduled against an
+ * absolute deadline ({@code start + initialDelay + n * period}), so that delays of the
+ * scheduler and the time spent in the task itself don't accumulate.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+final class FixedRateTask implements Scheduler.Task, Runnable {
+
+  private final Scheduler scheduler;
+  private final Clock clock;
+  private final Runnable task;
+  private final long firstDeadline;
+  private final long periodNanos;
+  private long executions = 0;
+
+  private final AtomicReference<Scheduler.Task> current = new AtomicReference<>();
+  private volatile boolean cancelled = false;
+
+  private FixedRateTask(Scheduler scheduler, long initialDelay, long period, Runnable task) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("period must be positive: " + period);
+    }
+    this.scheduler = scheduler;
+    this.clock = scheduler.clock();
+    this.task = task;
+    this.firstDeadline = clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(initialDelay);
+    this.periodNanos = TimeUnit.MILLISECONDS.toNanos(period);
+  }
+
+  static FixedRateTask start(Scheduler scheduler, long initialDelay, long period,
+                             Runnable task) {
+    final FixedRateTask fixedRate = new FixedRateTask(scheduler, initialDelay, period, task);
+    final Scheduler.Task first = scheduler.schedule(initialDelay, fixedRate);
+    // the first execution could have already happened and replaced the task:
+    fixedRate.current.compareAndSet(null, first);
+    return fixedRate;
+  }
+
+  @Override
+  public void run() {
+    if (cancelled) {
+      return;
+    }
+    task.run();
+
+    executions++;
+    final long deadline = firstDeadline + executions * periodNanos;
+    final long delayNanos = Math.max(deadline - clock.nanoTime(), 0);
+    // rounding up, so that the task never runs before its deadline:
+    final Scheduler.Task next = scheduler.schedule((delayNanos + 999_999) / 1_000_000, this);
+    current.set(next);
+
+    if (cancelled) {
+      // cancelled while re-scheduling:
+      next.cancel();
+    }
+  }
+
+  @Override
+  public void cancel() {
+    cancelled = true;
+    final Scheduler.Task task = current.get();
+    if (task != null) {
+      task.cancel();
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.github.lpld.jeff;
+
+import java.util.concurrent.Executor;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * IO node that shifts the run loop to an executor.
+ *
+ * @author leopold
+ * @since 4/10/18
+ */
+@RequiredArgsConstructor
+class Fork<T> extends IO<T> {
+
+  // null means the executor of the previous fork (see IO.cede)
+  final Executor executor;
+
+  @Override
+  public String toString() {
+    return "fork(" + executor + ")";
+  }
+}
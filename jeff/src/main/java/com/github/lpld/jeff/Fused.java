@@ -0,0 +1,306 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+import com.github.lpld.jeff.functions.Fn2;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Stream node that fuses a chain of element-wise operators ({@code map}, {@code filter},
+ * {@code take}, {@code drop}, {@code takeWhile}, {@code dropWhile}) over a source stream.
+ *
+ * Instead of building a layer of stream nodes per operator per element, the operators are
+ * composed into a single {@link Stage}, and the source is pulled through it in one loop. Stream
+ * nodes are only built when the result is consumed as a stream (e.g. by {@code mapEval},
+ * {@code flatMap} or {@code merge}), and then a chunk of results at a time. Folds don't build
+ * any nodes at all.
+ *
+ * If a function throws, the values computed before the failure are still emitted, and the
+ * failure comes after them.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+@RequiredArgsConstructor
+final class Fused<S, T> extends Stream<T> {
+
+  final Stream<S> source;
+  final Stage<S, T> stage;
+  // every stage emits exactly one value per input value, so take and drop can be applied to
+  // the source directly, without evaluating the dropped elements:
+  final boolean oneToOne;
+
+  /**
+   * Receiver of the values. Returns {@code false} when it doesn't need any more values.
+   */
+  @FunctionalInterface
+  interface Sink<A> {
+
+    boolean push(A value);
+  }
+
+  /**
+   * Description of a chain of operators. The sinks it creates are stateful, so a new one is
+   * created every time the stream is evaluated.
+   */
+  @FunctionalInterface
+  interface Stage<A, B> {
+
+    Sink<A> sink(Sink<B> downstream);
+
+    default <C> Stage<A, C> andThen(Stage<B, C> next) {
+      return downstream -> sink(next.sink(downstream));
+    }
+  }
+
+  static <A, B> Stage<A, B> mapping(Fn<A, B> f) {
+    return downstream -> value -> downstream.push(f.ap(value));
+  }
+
+  static <A> Stage<A, A> filtering(Fn<A, Boolean> p) {
+    return downstream -> value -> !p.ap(value) || downstream.push(value);
+  }
+
+  static <A> Stage<A, A> takingWhile(Fn<A, Boolean> p, boolean includeFailure) {
+    return downstream -> value -> {
+      if (p.ap(value)) {
+        return downstream.push(value);
+      }
+      if (includeFailure) {
+        downstream.push(value);
+      }
+      return false;
+    };
+  }
+
+  static <A> Stage<A, A> droppingWhile(Fn<A, Boolean> p) {
+    return downstream -> new Sink<A>() {
+      private boolean dropping = true;
+
+      @Override
+      public boolean push(A value) {
+        dropping = dropping && p.ap(value);
+        return dropping || downstream.push(value);
+      }
+    };
+  }
+
+  static <A> Stage<A, A> taking(int n) {
+    return downstream -> new Sink<A>() {
+      private int left = n;
+
+      @Override
+      public boolean push(A value) {
+        left--;
+        return downstream.push(value) && left > 0;
+      }
+    };
+  }
+
+  static <A> Stage<A, A> dropping(int n) {
+    return downstream -> new Sink<A>() {
+      private int left = n;
+
+      @Override
+      public boolean push(A value) {
+        if (left > 0) {
+          left--;
+          return true;
+        }
+        return downstream.push(value);
+      }
+    };
+  }
+
+  private <U> Stream<U> fuse(Stage<T, U> next, boolean nextOneToOne) {
+    return new Fused<>(source, stage.andThen(next), oneToOne && nextOneToOne);
+  }
+
+  /**
+   * The results as a plain stream of chunks. The chunks start small and grow, so that the
+   * functions are not applied much further than the consumer needs.
+   */
+  Stream<T> materialize() {
+    return source.through(pull -> {
+      final Buffer<T> buffer = new Buffer<>();
+      return emit(pull, stage.sink(buffer), buffer, 1);
+    });
+  }
+
+  /**
+   * Emit the results in chunks of at most {@code batch} values. The first chunk has a single
+   * value, and every next one is twice as big, up to {@link Chunk#DEFAULT_SIZE}, so a consumer
+   * that only needs a few values (e.g. {@code headOption} or {@code exists}) doesn't make the
+   * functions run for the values it never asks for, and a consumer that needs all of them still
+   * gets them in big chunks.
+   */
+  private static <S, T> Stream<T> emit(Pull<S> pull, Sink<S> sink, Buffer<T> buffer, int batch) {
+    return Defer(pull.hasNext().map(has -> {
+      if (!has) {
+        return Nil();
+      }
+
+      boolean more = true;
+      int pulled = 0;
+      try {
+        while (more && buffer.size < batch && pulled++ < Chunk.DEFAULT_SIZE
+               && (pull.buffered() > 0 || pull.advanceStrict())) {
+          more = sink.push(pull.next());
+        }
+      } catch (Throwable err) {
+        return failAfter(buffer.drain(), err);
+      }
+
+      final int next = Math.min(batch << 1, Chunk.DEFAULT_SIZE);
+      return ChunkCons(buffer.drain(), more ? emit(pull, sink, buffer, next) : Nil());
+    }));
+  }
+
+  @Override
+  <R> IO<R> doFoldLeft(R z, Fn2<R, T, R> f) {
+    return source.pull().flatMap(pull -> {
+      final Fold<T, R> fold = new Fold<>(z, f);
+      return pull.drain(stage.sink(fold)).map(u -> fold.acc);
+    });
+  }
+
+  @Override
+  public <U> Stream<U> map(Fn<T, U> f) {
+    return fuse(mapping(f), true);
+  }
+
+  @Override
+  public Stream<T> filter(Fn<T, Boolean> p) {
+    return fuse(filtering(p), false);
+  }
+
+  @Override
+  public Stream<T> takeWhile(Fn<T, Boolean> p, boolean includeFailure) {
+    return fuse(takingWhile(p, includeFailure), false);
+  }
+
+  @Override
+  public Stream<T> dropWhile(Fn<T, Boolean> p) {
+    return fuse(droppingWhile(p), false);
+  }
+
+  @Override
+  public Stream<T> take(int n) {
+    if (n <= 0) {
+      return Nil();
+    }
+    return oneToOne ? new Fused<>(source.take(n), stage, true) : fuse(taking(n), false);
+  }
+
+  @Override
+  public Stream<T> drop(int n) {
+    if (n <= 0) {
+      return this;
+    }
+    return oneToOne ? new Fused<>(source.drop(n), stage, true) : fuse(dropping(n), false);
+  }
+
+  @Override
+  <R> IO<R> doFoldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f) {
+    return materialize().doFoldRight(z, f);
+  }
+
+  @Override
+  <R> IO<R> doCollectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f) {
+    return materialize().doCollectRight(z, f);
+  }
+
+  @Override
+  public <R> Stream<R> scanLeft(R z, Fn2<R, T, R> f) {
+    return materialize().scanLeft(z, f);
+  }
+
+  @Override
+  <R> IO<R> doCollectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f) {
+    return materialize().doCollectLeft(z, f);
+  }
+
+  @Override
+  public <U> Stream<U> flatMap(Fn<T, Stream<U>> f) {
+    return materialize().flatMap(f);
+  }
+
+  @Override
+  public <U> Stream<U> mapEval(Fn<T, IO<U>> f) {
+    return materialize().mapEval(f);
+  }
+
+  @Override
+  public Stream<Chunk<T>> chunks() {
+    return materialize().chunks();
+  }
+
+  @Override
+  IO<Optional<IO<T>>> doLazyHead() {
+    return materialize().doLazyHead();
+  }
+
+  @Override
+  IO<Optional<T>> doHeadOption() {
+    return materialize().doHeadOption();
+  }
+
+  @Override
+  IO<Optional<Cons<T>>> extract() {
+    return materialize().extract();
+  }
+
+  @Override
+  public String toString() {
+    return "Fused(" + source + ")";
+  }
+
+  /**
+   * Sink that collects the values into chunks.
+   */
+  private static final class Buffer<T> implements Sink<T> {
+
+    private Object[] values = new Object[16];
+    private int size = 0;
+
+    @Override
+    public boolean push(T value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size << 1);
+      }
+      values[size++] = value;
+      return true;
+    }
+
+    Chunk<T> drain() {
+      if (size == 0) {
+        return Chunk.empty();
+      }
+      // the chunk keeps the array, so the next values go to a new one:
+      final Chunk<T> chunk = Chunk.wrap(values, 0, size);
+      values = new Object[16];
+      size = 0;
+      return chunk;
+    }
+  }
+
+  static final class Fold<T, R> implements Sink<T> {
+
+    private final Fn2<R, T, R> f;
+    R acc;
+
+    Fold(R z, Fn2<R, T, R> f) {
+      this.acc = z;
+      this.f = f;
+    }
+
+    @Override
+    public boolean push(T value) {
+      acc = f.ap(acc, value);
+      return true;
+    }
+  }
+}
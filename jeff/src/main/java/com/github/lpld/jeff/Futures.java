@@ -22,6 +22,11 @@ final class Futures {
     return future;
   }
 
+  static <T> CompletableFuture<T> failed(CompletableFuture<T> promise, Throwable err) {
+    promise.completeExceptionally(err);
+    return promise;
+  }
+
   static <T> CompletableFuture<T> completed(CompletableFuture<T> promise, T value) {
     promise.complete(value);
     return promise;
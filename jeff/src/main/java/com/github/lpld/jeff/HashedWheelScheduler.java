@@ -0,0 +1,253 @@
+package com.github.lpld.jeff;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link Scheduler} based on a hashed timing wheel.
+ *
+ * The wheel is an array of buckets, each holding a doubly-linked list of timers. A dedicated
+ * thread advances the wheel by one bucket every tick and runs the timers of that bucket that
+ * are due. Timers further away than one revolution of the wheel are kept in the bucket along
+ * with the number of remaining revolutions.
+ *
+ * Both scheduling and cancellation are O(1) and never take a lock: new and cancelled timers
+ * are handed over to the wheel thread via concurrent queues, and only the wheel thread touches
+ * the buckets. The price is precision: a timer is run at the first tick after its deadline, so
+ * it may be late by up to one tick duration.
+ *
+ * Tasks are run on the wheel thread, so they should be short. When a timer completes an IO,
+ * the IO continues on the wheel thread until its next async boundary, so it's usually a good
+ * idea to fork after sleeping if heavy work follows. Exceptions thrown by the tasks don't stop
+ * the wheel: they are passed to the uncaught exception handler of the wheel thread.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+public final class HashedWheelScheduler implements Scheduler, AutoCloseable {
+
+  private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+  private static final AtomicIntegerFieldUpdater<Timer> TIMER_STATE =
+      AtomicIntegerFieldUpdater.newUpdater(Timer.class, "state");
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final Queue<Timer> pending = new ConcurrentLinkedQueue<>();
+  private final Queue<Timer> cancelled = new ConcurrentLinkedQueue<>();
+  private final long startTime = System.nanoTime();
+  private final Thread worker;
+  private volatile boolean stopped = false;
+
+  // only accessed by the worker thread:
+  private long tick = 0;
+
+  /**
+   * Create a wheel of 512 buckets with 10 milliseconds tick duration.
+   */
+  public HashedWheelScheduler() {
+    this(10, 512);
+  }
+
+  /**
+   * @param tickMillis duration of a tick, which is also the precision of the scheduler
+   * @param wheelSize  number of buckets in the wheel, rounded up to a power of two
+   */
+  public HashedWheelScheduler(long tickMillis, int wheelSize) {
+    this(tickMillis, wheelSize, null);
+  }
+
+  /**
+   * @param tickMillis   duration of a tick, which is also the precision of the scheduler
+   * @param wheelSize    number of buckets in the wheel, rounded up to a power of two
+   * @param errorHandler receives the exceptions thrown by the tasks; if {@code null}, the
+   *                     default handler of the wheel thread is used
+   */
+  public HashedWheelScheduler(long tickMillis, int wheelSize,
+                              Thread.UncaughtExceptionHandler errorHandler) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+    }
+    if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+      throw new IllegalArgumentException("wheelSize is out of range: " + wheelSize);
+    }
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+
+    int size = 1;
+    while (size < wheelSize) {
+      size <<= 1;
+    }
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+
+    this.worker = new Thread(this::work, "jeff-wheel-timer");
+    this.worker.setDaemon(true);
+    if (errorHandler != null) {
+      this.worker.setUncaughtExceptionHandler(errorHandler);
+    }
+    this.worker.start();
+  }
+
+  @Override
+  public Task schedule(long millis, Runnable task) {
+    if (stopped) {
+      throw new IllegalStateException("Scheduler has been closed");
+    }
+    final long deadline =
+        System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+    final Timer timer = new Timer(task, deadline);
+    pending.add(timer);
+    return timer;
+  }
+
+  /**
+   * Stop the wheel thread. Timers that have not been run yet are discarded.
+   */
+  @Override
+  public void close() {
+    stopped = true;
+    LockSupport.unpark(worker);
+  }
+
+  private void work() {
+    while (!stopped) {
+      final long tickDeadline = (tick + 1) * tickNanos;
+      waitUntil(tickDeadline);
+      if (stopped) {
+        return;
+      }
+
+      removeCancelled();
+      transferPending();
+      wheel[(int) (tick & mask)].expire(tickDeadline);
+      tick++;
+    }
+  }
+
+  private void waitUntil(long deadline) {
+    long remaining;
+    while (!stopped && (remaining = deadline - (System.nanoTime() - startTime)) > 0) {
+      LockSupport.parkNanos(this, remaining);
+    }
+  }
+
+  private void removeCancelled() {
+    Timer timer;
+    while ((timer = cancelled.poll()) != null) {
+      if (timer.bucket != null) {
+        timer.bucket.remove(timer);
+      }
+    }
+  }
+
+  private void transferPending() {
+    for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+      final Timer timer = pending.poll();
+      if (timer == null) {
+        return;
+      }
+      if (timer.state != Timer.INIT) {
+        continue;
+      }
+
+      final long due = timer.deadline / tickNanos;
+      timer.remainingRounds = (due - tick) / wheel.length;
+      // timers that are already late go into the current bucket:
+      wheel[(int) (Math.max(due, tick) & mask)].add(timer);
+    }
+  }
+
+  private final class Timer implements Task {
+
+    static final int INIT = 0;
+    static final int CANCELLED = 1;
+    static final int EXPIRED = 2;
+
+    final Runnable task;
+    final long deadline;
+    volatile int state = INIT;
+
+    // only accessed by the worker thread:
+    long remainingRounds;
+    Bucket bucket;
+    Timer prev;
+    Timer next;
+
+    Timer(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public void cancel() {
+      if (TIMER_STATE.compareAndSet(this, INIT, CANCELLED)) {
+        // the worker thread will unlink it from its bucket:
+        cancelled.add(this);
+      }
+    }
+  }
+
+  private static final class Bucket {
+
+    private Timer head;
+    private Timer tail;
+
+    void add(Timer timer) {
+      timer.bucket = this;
+      if (head == null) {
+        head = tail = timer;
+      } else {
+        tail.next = timer;
+        timer.prev = tail;
+        tail = timer;
+      }
+    }
+
+    void remove(Timer timer) {
+      if (timer.prev != null) {
+        timer.prev.next = timer.next;
+      } else {
+        head = timer.next;
+      }
+      if (timer.next != null) {
+        timer.next.prev = timer.prev;
+      } else {
+        tail = timer.prev;
+      }
+      timer.prev = timer.next = null;
+      timer.bucket = null;
+    }
+
+    void expire(long tickDeadline) {
+      Timer timer = head;
+      while (timer != null) {
+        final Timer next = timer.next;
+
+        if (timer.state == Timer.CANCELLED) {
+          remove(timer);
+        } else if (timer.remainingRounds <= 0 && timer.deadline <= tickDeadline) {
+          remove(timer);
+          if (TIMER_STATE.compareAndSet(timer, Timer.INIT, Timer.EXPIRED)) {
+            try {
+              timer.task.run();
+            } catch (Throwable err) {
+              // a failing task must not stop the wheel:
+              final Thread thread = Thread.currentThread();
+              thread.getUncaughtExceptionHandler().uncaughtException(thread, err);
+            }
+          }
+        } else {
+          timer.remainingRounds--;
+        }
+        timer = next;
+      }
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn0;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State of a single {@link IO#hedge} evaluation.
+ *
+ * The first copy of the IO is started immediately. Every time the hedge delay elapses without
+ * a result, or a copy fails, one more copy is started, until {@code maxHedges} extra copies have
+ * been started. The first copy that succeeds wins: the timer and all the other copies are
+ * cancelled. The hedge fails when all {@code 1 + maxHedges} copies fail, with the error of the
+ * first one.
+ *
+ * Bookkeeping is guarded by the monitor of this object. It is only touched a few times per
+ * copy, so there's no point in anything more clever.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+final class Hedge<T> {
+
+  private final IO<T> io;
+  private final Fn0<Long> delay;
+  private final int maxHedges;
+  private final Scheduler scheduler;
+  private final Executor executor;
+  private final LatencyTracker tracker;
+  private final Callback<T> callback;
+
+  private final List<Copy> copies = new ArrayList<>();
+  private Scheduler.Task timer;
+  private Throwable error;
+  private int failed = 0;
+  private boolean done = false;
+
+  private Hedge(IO<T> io, Fn0<Long> delay, int maxHedges, Scheduler scheduler,
+                Executor executor, LatencyTracker tracker, Callback<T> callback) {
+    this.io = io;
+    this.delay = delay;
+    this.maxHedges = maxHedges;
+    this.scheduler = scheduler;
+    this.executor = executor;
+    this.tracker = tracker;
+    this.callback = callback;
+  }
+
+  static <T> IO<T> hedge(IO<T> io, Fn0<Long> delay, int maxHedges, Scheduler scheduler,
+                         Executor executor, LatencyTracker tracker) {
+    if (maxHedges < 0) {
+      throw new IllegalArgumentException("maxHedges must not be negative: " + maxHedges);
+    }
+
+    return new Async<>(cb -> {
+      final Hedge<T> hedge =
+          new Hedge<>(io, delay, maxHedges, scheduler, executor, tracker, cb);
+      hedge.launch();
+      return IO.delay(hedge::cancel);
+    });
+  }
+
+  private void launch() {
+    // computed outside of the lock, since the percentile of a tracker sorts its window:
+    final long nextDelay = delay.ap();
+    final Copy copy = new Copy();
+
+    synchronized (this) {
+      if (done || copies.size() > maxHedges) {
+        return;
+      }
+      copies.add(copy);
+      cancelTimer();
+      if (copies.size() <= maxHedges) {
+        timer = scheduler.schedule(nextDelay, this::launch);
+      }
+    }
+
+    // If the hedge completes at this point, the copy is already cancelled, so it will
+    // not even start.
+    IORun.runAsync(IO.forked(executor).chain(io), copy, copy);
+  }
+
+  private void cancel() {
+    final List<Copy> toCancel;
+    synchronized (this) {
+      done = true;
+      toCancel = new ArrayList<>(copies);
+      cancelTimer();
+    }
+    toCancel.forEach(CancellableIOTask::cancel);
+  }
+
+  private void cancelTimer() {
+    if (timer != null) {
+      timer.cancel();
+    }
+  }
+
+  /**
+   * A single copy of the hedged IO: both its cancellation token and its result callback.
+   */
+  private final class Copy extends CancellableIOTask implements Callback<T> {
+
+    private final long startedAt = scheduler.clock().nanoTime();
+
+    @Override
+    public void success(T value) {
+      final List<Copy> losers;
+      synchronized (Hedge.this) {
+        if (done) {
+          return;
+        }
+        done = true;
+        losers = new ArrayList<>(copies);
+        cancelTimer();
+      }
+
+      if (tracker != null) {
+        final long latency = scheduler.clock().nanoTime() - startedAt;
+        tracker.record(TimeUnit.NANOSECONDS.toMillis(latency));
+      }
+
+      for (Copy loser : losers) {
+        if (loser != this) {
+          loser.cancel();
+        }
+      }
+      callback.success(value);
+    }
+
+    @Override
+    public void failure(Throwable err) {
+      final boolean allFailed;
+      synchronized (Hedge.this) {
+        if (done) {
+          return;
+        }
+        // the rest of the errors are dropped: they belong to the caller, so they're not modified
+        if (error == null) {
+          error = err;
+        }
+        allFailed = ++failed > maxHedges;
+        if (allFailed) {
+          done = true;
+          cancelTimer();
+        }
+      }
+
+      if (allFailed) {
+        callback.failure(error);
+      } else {
+        // no need to wait for the timer, the next copy can be started right away:
+        launch();
+      }
+    }
+  }
+}
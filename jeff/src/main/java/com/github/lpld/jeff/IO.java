@@ -10,27 +10,23 @@ import com.github.lpld.jeff.functions.Run3;
 import com.github.lpld.jeff.functions.XRun;
 import com.github.lpld.jeff.functions.Xn0;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
-import lombok.RequiredArgsConstructor;
 
 import static com.github.lpld.jeff.data.Or.Left;
 import static com.github.lpld.jeff.data.Or.Right;
 import static com.github.lpld.jeff.data.Pr.Pr;
 import static com.github.lpld.jeff.functions.Fn.id;
 
-
 /**
  * IO monad for Java, sort of.
  *
@@ -92,20 +88,39 @@ public abstract class IO<T> {
    * Shift the execution of IO to another thread/thread-pool.
    */
   public static IO<Unit> forked(Executor executor) {
-    return async(onFinish -> executor.execute(() -> onFinish.run(Right(Unit.unit))));
+    return new Fork<>(executor);
   }
 
   public IO<T> fork(Executor executor) {
     return this.then(IO.forked(executor));
   }
 
+  /**
+   * Yield the current thread: the evaluation is re-submitted to the executor of the last fork,
+   * so that other tasks waiting for that executor get a chance to run. If the IO hasn't been
+   * forked, this is a no-op.
+   *
+   * Long-running IOs also cede automatically every {@code jeff.autoCedeThreshold} steps
+   * (1024 by default).
+   */
+  public static IO<Unit> cede() {
+    return cede;
+  }
+
+  private static final IO<Unit> cede = new Fork<>(null);
+
   /**
    * Creates an async boundary.
    */
   public IO<T> fork() {
-    return this.then(IO.async(onFinish -> onFinish.run(Right(Unit.unit))));
+    return this.then(asyncBoundary);
   }
 
+  private static final IO<Unit> asyncBoundary = new Async<>(cb -> {
+    cb.success(Unit.unit);
+    return IO.unit;
+  });
+
   /**
    * Create an IO that represents asynchronous computation. Function {@code f} injects a callback
    * ({@code Run1<Or<Throwable, T>>}) that user can use to signal completion with either
@@ -120,11 +135,17 @@ public abstract class IO<T> {
 
   /**
    * Create an async IO that can be cancelled. Function {@code f} injects a callback (similar to
-   * {@link IO#async(Run1)}) and expects the user to provide cancellation action. See implementation
-   * of {@link IO#sleep(ScheduledExecutorService, long)} for example.
+   * {@link IO#async(Run1)}) and expects the user to provide cancellation action, that is run if
+   * the IO is cancelled while it's waiting for the callback:
+   * {@code
+   * IO.cancellable(cb -> {
+   *   final Future<?> task = executor.submit(() -> cb.run(Or.Right(compute())));
+   *   return IO.delay(() -> task.cancel(true));
+   * })
+   * }
    */
   public static <T> IO<T> cancellable(Fn<Run1<Or<Throwable, T>>, IO<?>> f) {
-    return new Async<>(f.andThen(IO::toUnit));
+    return new Async<>(f::ap);
   }
 
   /**
@@ -166,6 +187,56 @@ public abstract class IO<T> {
     });
   }
 
+  /**
+   * Race any number of IO computations and return an IO that will contain a value of the first
+   * IO that completes successfully. All the other IOs will be cancelled. The resulting IO fails
+   * only if all of the IOs fail, with the error of the one that failed first.
+   */
+  public static <T> IO<T> raceAll(Executor executor, List<IO<T>> ios) {
+    return RaceAll.raceAll(executor, ios);
+  }
+
+  /**
+   * Hedged execution of {@code io}: it is started on {@code executor}, and if it has not
+   * completed after {@code delayMillis}, another copy of it is started, and so on until
+   * {@code maxHedges} extra copies are running. A copy that fails doesn't wait for the delay: the
+   * next copy is started right away. The result of the first copy that succeeds is returned and
+   * all the other copies are cancelled. The resulting IO fails only if all
+   * {@code 1 + maxHedges} copies fail, with the error of the one that failed first.
+   */
+  public static <T> IO<T> hedge(IO<T> io, long delayMillis, int maxHedges,
+                                Scheduler scheduler, Executor executor) {
+    return Hedge.hedge(io, () -> delayMillis, maxHedges, scheduler, executor, null);
+  }
+
+  /**
+   * Same as {@link IO#hedge(IO, long, int, Scheduler, Executor)}, with the timers scheduled on
+   * a {@link ScheduledExecutorService}.
+   */
+  public static <T> IO<T> hedge(IO<T> io, long delayMillis, int maxHedges,
+                                ScheduledExecutorService scheduler, Executor executor) {
+    return hedge(io, delayMillis, maxHedges, Scheduler.of(scheduler), executor);
+  }
+
+  /**
+   * Same as {@link IO#hedge(IO, long, int, Scheduler, Executor)}, but the hedge delay is the
+   * current percentile of {@code tracker}. Latencies of the winning copies, as measured by the
+   * clock of the {@code scheduler}, are recorded into the tracker.
+   */
+  public static <T> IO<T> hedge(IO<T> io, LatencyTracker tracker, int maxHedges,
+                                Scheduler scheduler, Executor executor) {
+    return Hedge.hedge(io, tracker::percentile, maxHedges, scheduler, executor, tracker);
+  }
+
+  /**
+   * Same as {@link IO#hedge(IO, LatencyTracker, int, Scheduler, Executor)}, with the timers
+   * scheduled on a {@link ScheduledExecutorService}.
+   */
+  public static <T> IO<T> hedge(IO<T> io, LatencyTracker tracker, int maxHedges,
+                                ScheduledExecutorService scheduler, Executor executor) {
+    return hedge(io, tracker, maxHedges, Scheduler.of(scheduler), executor);
+  }
+
   /**
    * Function that non-deterministically places two IO values in a sequence.
    * Return value of this method is a product of either L and IO<R> or a product of R and IO<L>,
@@ -228,27 +299,69 @@ public abstract class IO<T> {
         ));
   }
 
+  /**
+   * Apply {@code f} to every item and evaluate the resulting IOs concurrently on
+   * {@code executor}, with at most {@code parallelism} of them running at the same time.
+   * The results are returned in the order of {@code items}. If any of the IOs fails, all
+   * the others are cancelled and the resulting IO fails with the same error.
+   */
+  public static <A, B> IO<List<B>> parTraverse(Executor executor, int parallelism,
+                                               List<A> items, Fn<A, IO<B>> f) {
+    return ParTraverse.parTraverse(executor, parallelism, items, f);
+  }
+
+  /**
+   * Evaluate IOs concurrently on {@code executor}, with at most {@code parallelism} of them
+   * running at the same time. See {@link IO#parTraverse}.
+   */
+  public static <T> IO<List<T>> parSequenceN(Executor executor, int parallelism,
+                                             List<IO<T>> ios) {
+    return parTraverse(executor, parallelism, ios, id());
+  }
+
   /**
    * Sleep for {@code millis} amount of milliseconds.
    */
   public static IO<Unit> sleep(ScheduledExecutorService scheduler, long millis) {
-    return IO.cancellable(onFinish -> {
-      final ScheduledFuture<?> task = scheduler
-          .schedule(() -> onFinish.run(Right(Unit.unit)), millis, TimeUnit.MILLISECONDS);
+    return sleep(Scheduler.of(scheduler), millis);
+  }
+
+  /**
+   * Sleep for {@code millis} amount of milliseconds using the given {@link Scheduler}.
+   */
+  public static IO<Unit> sleep(Scheduler scheduler, long millis) {
+    return new Async<>(cb -> {
+      final Scheduler.Task task = scheduler.schedule(millis, () -> cb.success(Unit.unit));
 
-      return IO.delay(() -> task.cancel(false));
+      return IO.delay(task::cancel);
     });
   }
 
   public static <T> IO<T> fromFuture(CompletableFuture<T> future) {
-    return async(onFinish -> future.whenComplete((res, err) -> onFinish.run(Or.of(err, res))));
+    return new Async<>(cb -> {
+      future.whenComplete((res, err) -> {
+        if (err != null) {
+          cb.failure(err);
+        } else {
+          cb.success(res);
+        }
+      });
+      return IO.unit;
+    });
   }
 
   /**
    * Apply transformation {@code f} to this IO.
    */
+  @SuppressWarnings("unchecked")
   public <U> IO<U> map(Fn<T, U> f) {
-    return flatMap(f.andThen(IO::pure));
+    // fusing consecutive maps into a single function, but only up to a limited depth, so that
+    // the composed function stays small enough to be inlined:
+    if (this instanceof Map && ((Map<?, T>) this).depth < Map.MAX_FUSION_DEPTH) {
+      final Map<Object, T> map = (Map<Object, T>) this;
+      return new Map<>(map.source, map.f.andThen(f), map.depth + 1);
+    }
+    return new Map<>(this, f, 0);
   }
 
   /**
@@ -296,100 +409,45 @@ public abstract class IO<T> {
   }
 
   /**
-   * Trigger asynchronous execution of this IO.
+   * Fail with {@link java.util.concurrent.TimeoutException} if this IO does not complete in
+   * {@code millis} milliseconds. This IO is cancelled in that case.
    */
-  public CompletableFuture<T> runAsync() {
-    return IORun.runAsync(this, UncancellableIOTask.INSTANCE);
+  public IO<T> timeout(Scheduler scheduler, long millis) {
+    return Timeout.timeout(this, scheduler, millis);
   }
 
   /**
-   * Synchronously run this IO. This method will block if this IO has asynchronous or blocking
-   * parts.
+   * Continue with {@code fallback} if this IO does not complete in {@code millis}
+   * milliseconds. This IO is cancelled in that case.
    */
-  public T run() {
-    try {
-      return runAsync().get();
-    } catch (InterruptedException err) {
-      return WrappedError.throwWrapped(err);
-    } catch (ExecutionException err) {
-      return WrappedError.throwWrapped(err.getCause());
-    }
-  }
-}
-
-@RequiredArgsConstructor
-class Delay<T> extends IO<T> {
-
-  final Xn0<T> thunk;
-
-  @Override
-  public String toString() {
-    return "delay(.)";
+  public IO<T> timeoutTo(Scheduler scheduler, long millis, IO<T> fallback) {
+    return Timeout.timeoutTo(this, scheduler, millis, fallback);
   }
-}
-
-@RequiredArgsConstructor
-class Suspend<T> extends IO<T> {
-
-  final Xn0<IO<T>> resume;
-
-  @Override
-  public String toString() {
-    return "suspend(.)";
-  }
-}
-
-@RequiredArgsConstructor
-class Pure<T> extends IO<T> {
-  final T pure;
-
-  @Override
-  public String toString() {
-    return "pure(" + pure + ")";
-  }
-}
-
-@RequiredArgsConstructor
-class Fail<T> extends IO<T> {
 
-  final Fn0<Throwable> err;
-
-  @Override
-  public String toString() {
-    return "fail(" + err + ")";
+  /**
+   * Start this IO concurrently on {@code executor}. The resulting IO completes immediately with
+   * a {@link Fiber} that can be used to wait for the result or to cancel the computation.
+   */
+  public IO<Fiber<T>> start(Executor executor) {
+    return IO.delay(() -> {
+      final RunningFiber<T> fiber = new RunningFiber<>();
+      IORun.runAsync(IO.forked(executor).chain(this), fiber.task, fiber);
+      return fiber;
+    });
   }
-}
-
-@RequiredArgsConstructor
-class Recover<T> extends IO<T> {
-  final IO<T> io;
-  final Function<Throwable, Optional<IO<T>>> recover;
 
-  @Override
-  public String toString() {
-    return "Recover(" + io + ")";
+  /**
+   * Trigger asynchronous execution of this IO.
+   */
+  public CompletableFuture<T> runAsync() {
+    return IORun.runAsync(this, UncancellableIOTask.INSTANCE);
   }
-}
-
-@RequiredArgsConstructor
-class Bind<T, U> extends IO<U> {
-  final IO<T> source;
-  final Fn<T, IO<U>> f;
 
-  @Override
-  public String toString() {
-    return "Bind(" + source + ", .)";
+  /**
+   * Synchronously run this IO. This method will block if this IO has asynchronous or blocking
+   * parts.
+   */
+  public T run() {
+    return IORun.runSync(this);
   }
 }
-
-@RequiredArgsConstructor
-class Async<T> extends IO<T> {
-
-  // (Or<Throwable, T> => Unit) => Unit
-  final Fn<Run1<Or<Throwable, T>>, IO<Unit>> cb;
-
-  @Override
-  public String toString() {
-    return "async(.)";
-  }
-}
\ No newline at end of file
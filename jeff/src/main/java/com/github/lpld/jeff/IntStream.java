@@ -0,0 +1,217 @@
+package com.github.lpld.jeff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+import static com.github.lpld.jeff.Stream.Cons;
+import static com.github.lpld.jeff.Stream.Lazy;
+import static com.github.lpld.jeff.Stream.Nil;
+
+/**
+ * Stream of primitive {@code int} values.
+ *
+ * It is a {@link Stream} of {@code int[]} chunks under the hood: all the operations work on
+ * the whole chunks in tight loops, and the values are never boxed unless the stream is
+ * converted with {@link #boxed()} or {@link #mapToObj(IntFunction)}. The arrays are never
+ * modified after they have been put into the stream.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+public final class IntStream {
+
+  final Stream<int[]> chunks;
+
+  IntStream(Stream<int[]> chunks) {
+    this.chunks = chunks;
+  }
+
+  /**
+   * Stream of the given values.
+   */
+  public static IntStream of(int... values) {
+    return new IntStream(values.length == 0 ? Nil() : Cons(values.clone(), Nil()));
+  }
+
+  /**
+   * Stream of the values from {@code from} (inclusive) to {@code until} (exclusive).
+   */
+  public static IntStream range(int from, int until) {
+    return new IntStream(rangeChunks(from, until));
+  }
+
+  /**
+   * Stream of the values from {@code from} to {@code to}, both inclusive.
+   */
+  public static IntStream rangeClosed(int from, int to) {
+    return new IntStream(rangeChunks(from, (long) to + 1));
+  }
+
+  // the bounds are longs, so that a range can end with Integer.MAX_VALUE:
+  private static Stream<int[]> rangeChunks(long from, long until) {
+    return Lazy(() -> {
+      if (from >= until) {
+        return Nil();
+      }
+      final int size = (int) Math.min(Chunk.DEFAULT_SIZE, until - from);
+      final int[] chunk = new int[size];
+      for (int i = 0; i < size; i++) {
+        chunk[i] = (int) (from + i);
+      }
+      return Cons(chunk, rangeChunks(from + size, until));
+    });
+  }
+
+  public IntStream map(IntUnaryOperator f) {
+    return new IntStream(chunks.map(chunk -> {
+      final int[] result = new int[chunk.length];
+      for (int i = 0; i < chunk.length; i++) {
+        result[i] = f.applyAsInt(chunk[i]);
+      }
+      return result;
+    }));
+  }
+
+  public IntStream filter(IntPredicate p) {
+    return new IntStream(chunks
+                             .map(chunk -> {
+                               final int[] result = new int[chunk.length];
+                               int size = 0;
+                               for (int value : chunk) {
+                                 if (p.test(value)) {
+                                   result[size++] = value;
+                                 }
+                               }
+                               return size == chunk.length ? chunk : Arrays.copyOf(result, size);
+                             })
+                             .filter(chunk -> chunk.length > 0));
+  }
+
+  public IntStream take(long n) {
+    return new IntStream(n <= 0 ? Nil() : new Fused<>(chunks, taking(n), false));
+  }
+
+  /**
+   * Stage that passes the chunks through until {@code n} values have been taken, cutting the last
+   * chunk, and stops there.
+   */
+  private static Fused.Stage<int[], int[]> taking(long n) {
+    return downstream -> new Fused.Sink<int[]>() {
+      private long left = n;
+
+      @Override
+      public boolean push(int[] chunk) {
+        if (chunk.length >= left) {
+          downstream.push(chunk.length == left ? chunk : Arrays.copyOf(chunk, (int) left));
+          return false;
+        }
+        left -= chunk.length;
+        return downstream.push(chunk);
+      }
+    };
+  }
+
+  public IntStream drop(long n) {
+    return new IntStream(n <= 0 ? chunks : new Fused<>(chunks, dropping(n), false));
+  }
+
+  /**
+   * Stage that skips the chunks until {@code n} values have been dropped, cutting the first chunk
+   * that is passed through.
+   */
+  private static Fused.Stage<int[], int[]> dropping(long n) {
+    return downstream -> new Fused.Sink<int[]>() {
+      private long left = n;
+
+      @Override
+      public boolean push(int[] chunk) {
+        if (left == 0) {
+          return downstream.push(chunk);
+        }
+        if (chunk.length <= left) {
+          left -= chunk.length;
+          return true;
+        }
+        final int from = (int) left;
+        left = 0;
+        return downstream.push(Arrays.copyOfRange(chunk, from, chunk.length));
+      }
+    };
+  }
+
+  public IO<Integer> fold(int z, IntBinaryOperator f) {
+    return chunks.foldLeft(z, (acc, chunk) -> {
+      int result = acc;
+      for (int value : chunk) {
+        result = f.applyAsInt(result, value);
+      }
+      return result;
+    });
+  }
+
+  public IO<Integer> sum() {
+    return fold(0, Integer::sum);
+  }
+
+  public IO<Long> count() {
+    return chunks.foldLeft(0L, (acc, chunk) -> acc + chunk.length);
+  }
+
+  public IO<int[]> toArray() {
+    return IO.suspend(() -> chunks.foldLeft(new ArrayList<int[]>(), (acc, chunk) -> {
+      acc.add(chunk);
+      return acc;
+    })).map(list -> {
+      final int[] result = new int[list.stream().mapToInt(chunk -> chunk.length).sum()];
+      int pos = 0;
+      for (int[] chunk : list) {
+        System.arraycopy(chunk, 0, result, pos, chunk.length);
+        pos += chunk.length;
+      }
+      return result;
+    });
+  }
+
+  public LongStream asLongStream() {
+    return new LongStream(chunks.map(chunk -> {
+      final long[] result = new long[chunk.length];
+      for (int i = 0; i < chunk.length; i++) {
+        result[i] = chunk[i];
+      }
+      return result;
+    }));
+  }
+
+  public DoubleStream asDoubleStream() {
+    return new DoubleStream(chunks.map(chunk -> {
+      final double[] result = new double[chunk.length];
+      for (int i = 0; i < chunk.length; i++) {
+        result[i] = chunk[i];
+      }
+      return result;
+    }));
+  }
+
+  public <U> Stream<U> mapToObj(IntFunction<U> f) {
+    return Stream.fromChunks(chunks.map(chunk -> {
+      final Object[] result = new Object[chunk.length];
+      for (int i = 0; i < chunk.length; i++) {
+        result[i] = f.apply(chunk[i]);
+      }
+      return Chunk.<U>wrap(result, 0, result.length);
+    }));
+  }
+
+  public Stream<Integer> boxed() {
+    return mapToObj(Integer::valueOf);
+  }
+
+  @Override
+  public String toString() {
+    return "IntStream(" + chunks + ")";
+  }
+}
@@ -0,0 +1,55 @@
+package com.github.lpld.jeff;
+
+import java.util.Arrays;
+
+/**
+ * Running estimate of a latency percentile over a window of the most recent samples. Used by
+ * {@link IO#hedge(IO, LatencyTracker, int, java.util.concurrent.ScheduledExecutorService,
+ * java.util.concurrent.Executor)} to derive the hedge delay from the observed latencies.
+ *
+ * Until the first sample is recorded, {@link LatencyTracker#percentile()} returns the
+ * initial value that has been passed to the constructor.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+public final class LatencyTracker {
+
+  private final double percentile;
+  private final long initial;
+  private final long[] samples;
+  private int count = 0;
+  private int position = 0;
+
+  /**
+   * @param percentile percentile to track, between 0 and 1 (e.g. 0.95)
+   * @param window     number of most recent samples to take into account
+   * @param initial    value that is returned until any samples are recorded
+   */
+  public LatencyTracker(double percentile, int window, long initial) {
+    if (percentile < 0 || percentile > 1) {
+      throw new IllegalArgumentException("percentile must be between 0 and 1: " + percentile);
+    }
+    if (window <= 0) {
+      throw new IllegalArgumentException("window must be positive: " + window);
+    }
+    this.percentile = percentile;
+    this.initial = initial;
+    this.samples = new long[window];
+  }
+
+  public synchronized void record(long millis) {
+    samples[position] = millis;
+    position = (position + 1) % samples.length;
+    count = Math.min(count + 1, samples.length);
+  }
+
+  public synchronized long percentile() {
+    if (count == 0) {
+      return initial;
+    }
+    final long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    return sorted[Math.max(0, (int) Math.ceil(percentile * count) - 1)];
+  }
+}
@@ -0,0 +1,199 @@
+package com.github.lpld.jeff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+
+import static com.github.lpld.jeff.Stream.Cons;
+import static com.github.lpld.jeff.Stream.Lazy;
+import static com.github.lpld.jeff.Stream.Nil;
+
+/**
+ * Stream of primitive {@code long} values.
+ *
+ * It is a {@link Stream} of {@code long[]} chunks under the hood: all the operations work on
+ * the whole chunks in tight loops, and the values are never boxed unless the stream is
+ * converted with {@link #boxed()} or {@link #mapToObj(LongFunction)}. The arrays are never
+ * modified after they have been put into the stream.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+public final class LongStream {
+
+  final Stream<long[]> chunks;
+
+  LongStream(Stream<long[]> chunks) {
+    this.chunks = chunks;
+  }
+
+  /**
+   * Stream of the given values.
+   */
+  public static LongStream of(long... values) {
+    return new LongStream(values.length == 0 ? Nil() : Cons(values.clone(), Nil()));
+  }
+
+  /**
+   * Stream of the values from {@code from} (inclusive) to {@code until} (exclusive).
+   */
+  public static LongStream range(long from, long until) {
+    return new LongStream(rangeChunks(from, until));
+  }
+
+  private static Stream<long[]> rangeChunks(long from, long until) {
+    return Lazy(() -> {
+      if (from >= until) {
+        return Nil();
+      }
+      final int size = (int) Math.min(Chunk.DEFAULT_SIZE, until - from);
+      final long[] chunk = new long[size];
+      for (int i = 0; i < size; i++) {
+        chunk[i] = from + i;
+      }
+      return Cons(chunk, rangeChunks(from + size, until));
+    });
+  }
+
+  public LongStream map(LongUnaryOperator f) {
+    return new LongStream(chunks.map(chunk -> {
+      final long[] result = new long[chunk.length];
+      for (int i = 0; i < chunk.length; i++) {
+        result[i] = f.applyAsLong(chunk[i]);
+      }
+      return result;
+    }));
+  }
+
+  public LongStream filter(LongPredicate p) {
+    return new LongStream(chunks
+                             .map(chunk -> {
+                               final long[] result = new long[chunk.length];
+                               int size = 0;
+                               for (long value : chunk) {
+                                 if (p.test(value)) {
+                                   result[size++] = value;
+                                 }
+                               }
+                               return size == chunk.length ? chunk : Arrays.copyOf(result, size);
+                             })
+                             .filter(chunk -> chunk.length > 0));
+  }
+
+  public LongStream take(long n) {
+    return new LongStream(n <= 0 ? Nil() : new Fused<>(chunks, taking(n), false));
+  }
+
+  /**
+   * Stage that passes the chunks through until {@code n} values have been taken, cutting the last
+   * chunk, and stops there.
+   */
+  private static Fused.Stage<long[], long[]> taking(long n) {
+    return downstream -> new Fused.Sink<long[]>() {
+      private long left = n;
+
+      @Override
+      public boolean push(long[] chunk) {
+        if (chunk.length >= left) {
+          downstream.push(chunk.length == left ? chunk : Arrays.copyOf(chunk, (int) left));
+          return false;
+        }
+        left -= chunk.length;
+        return downstream.push(chunk);
+      }
+    };
+  }
+
+  public LongStream drop(long n) {
+    return new LongStream(n <= 0 ? chunks : new Fused<>(chunks, dropping(n), false));
+  }
+
+  /**
+   * Stage that skips the chunks until {@code n} values have been dropped, cutting the first chunk
+   * that is passed through.
+   */
+  private static Fused.Stage<long[], long[]> dropping(long n) {
+    return downstream -> new Fused.Sink<long[]>() {
+      private long left = n;
+
+      @Override
+      public boolean push(long[] chunk) {
+        if (left == 0) {
+          return downstream.push(chunk);
+        }
+        if (chunk.length <= left) {
+          left -= chunk.length;
+          return true;
+        }
+        final int from = (int) left;
+        left = 0;
+        return downstream.push(Arrays.copyOfRange(chunk, from, chunk.length));
+      }
+    };
+  }
+
+  public IO<Long> fold(long z, LongBinaryOperator f) {
+    return chunks.foldLeft(z, (acc, chunk) -> {
+      long result = acc;
+      for (long value : chunk) {
+        result = f.applyAsLong(result, value);
+      }
+      return result;
+    });
+  }
+
+  public IO<Long> sum() {
+    return fold(0, Long::sum);
+  }
+
+  public IO<Long> count() {
+    return chunks.foldLeft(0L, (acc, chunk) -> acc + chunk.length);
+  }
+
+  public IO<long[]> toArray() {
+    return IO.suspend(() -> chunks.foldLeft(new ArrayList<long[]>(), (acc, chunk) -> {
+      acc.add(chunk);
+      return acc;
+    })).map(list -> {
+      final long[] result = new long[list.stream().mapToInt(chunk -> chunk.length).sum()];
+      int pos = 0;
+      for (long[] chunk : list) {
+        System.arraycopy(chunk, 0, result, pos, chunk.length);
+        pos += chunk.length;
+      }
+      return result;
+    });
+  }
+
+  public DoubleStream asDoubleStream() {
+    return new DoubleStream(chunks.map(chunk -> {
+      final double[] result = new double[chunk.length];
+      for (int i = 0; i < chunk.length; i++) {
+        result[i] = chunk[i];
+      }
+      return result;
+    }));
+  }
+
+  public <U> Stream<U> mapToObj(LongFunction<U> f) {
+    return Stream.fromChunks(chunks.map(chunk -> {
+      final Object[] result = new Object[chunk.length];
+      for (int i = 0; i < chunk.length; i++) {
+        result[i] = f.apply(chunk[i]);
+      }
+      return Chunk.<U>wrap(result, 0, result.length);
+    }));
+  }
+
+  public Stream<Long> boxed() {
+    return mapToObj(Long::valueOf);
+  }
+
+  @Override
+  public String toString() {
+    return "LongStream(" + chunks + ")";
+  }
+}
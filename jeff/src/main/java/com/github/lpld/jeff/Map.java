@@ -0,0 +1,28 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * IO node of {@link IO#map}. Consecutive maps are fused into a single function, up to
+ * {@link #MAX_FUSION_DEPTH} of them.
+ *
+ * @author leopold
+ * @since 4/10/18
+ */
+@RequiredArgsConstructor
+class Map<T, U> extends IO<U> {
+
+  static final int MAX_FUSION_DEPTH = 8;
+
+  final IO<T> source;
+  final Fn<T, U> f;
+  // number of functions that are already fused into `f`
+  final int depth;
+
+  @Override
+  public String toString() {
+    return "Map(" + source + ", .)";
+  }
+}
@@ -0,0 +1,29 @@
+package com.github.lpld.jeff;
+
+/**
+ * What a fixed-rate ticker stream ({@link Stream#tickAtFixedRate}) does with the ticks that
+ * happened while the consumer was busy processing the previous element.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+public enum MissedTicks {
+
+  /**
+   * Emit one tick immediately and drop the rest of the missed ones. The following ticks stay
+   * aligned to the original schedule.
+   */
+  SKIP,
+
+  /**
+   * Emit all of the missed ticks immediately, one after another, to catch up with the original
+   * schedule.
+   */
+  BURST,
+
+  /**
+   * Emit one tick immediately and drop the rest of the missed ones. The schedule is shifted, so
+   * that the next tick happens one period after the late one.
+   */
+  DELAY
+}
@@ -0,0 +1,119 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+import com.github.lpld.jeff.functions.Fn2;
+
+import java.util.Optional;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import static com.github.lpld.jeff.IO.IO;
+import static com.github.lpld.jeff.IO.pure;
+
+/**
+ * Empty stream.
+ *
+ * @author leopold
+ * @since 10/10/18
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+class Nil extends Stream<Object> {
+
+  private static final Nil INSTANCE = new Nil();
+
+  @SuppressWarnings("unchecked")
+  static <T> Stream<T> instance() {
+    return (Stream<T>) INSTANCE;
+  }
+
+  @Override
+  <R> IO<R> doFoldRight(IO<R> z, Fn2<Object, IO<R>, IO<R>> f) {
+    return z;
+  }
+
+  @Override
+  <R> IO<R> doCollectLeft(IO<R> z, Fn2<IO<R>, IO<Object>, IO<R>> f) {
+    return z;
+  }
+
+  @Override
+  <R> IO<R> doCollectRight(IO<R> z, Fn2<IO<Object>, IO<R>, IO<R>> f) {
+    return z;
+  }
+
+  @Override
+  <R> IO<R> doFoldLeft(R z, Fn2<R, Object, R> f) {
+    return pure(z);
+  }
+
+  @Override
+  public <R> Stream<R> scanLeft(R z, Fn2<R, Object, R> f) {
+    return instance();
+  }
+
+  @Override
+  public Stream<Object> take(int n) {
+    return instance();
+  }
+
+  @Override
+  public Stream<Object> drop(int n) {
+    return instance();
+  }
+
+  @Override
+  public Stream<Object> takeWhile(Fn<Object, Boolean> p, boolean includeFailure) {
+    return instance();
+  }
+
+  @Override
+  public Stream<Object> dropWhile(Fn<Object, Boolean> p) {
+    return instance();
+  }
+
+  @Override
+  public <U> Stream<U> flatMap(Fn<Object, Stream<U>> f) {
+    return instance();
+  }
+
+  @Override
+  public <U> Stream<U> map(Fn<Object, U> f) {
+    return instance();
+  }
+
+  @Override
+  public <U> Stream<U> mapEval(Fn<Object, IO<U>> f) {
+    return instance();
+  }
+
+  @Override
+  public Stream<Chunk<Object>> chunks() {
+    return instance();
+  }
+
+  @Override
+  public Stream<Object> filter(Fn<Object, Boolean> p) {
+    return instance();
+  }
+
+  @Override
+  IO<Optional<IO<Object>>> doLazyHead() {
+    return pure(Optional.empty());
+  }
+
+  @Override
+  IO<Optional<Object>> doHeadOption() {
+    return pure(Optional.empty());
+  }
+
+  @Override
+  IO<Optional<Cons<Object>>> extract() {
+    return pure(Optional.empty());
+  }
+
+  @Override
+  public String toString() {
+    return "Nil";
+  }
+}
@@ -0,0 +1,274 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Unit;
+import com.github.lpld.jeff.functions.Fn;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * State of a single evaluation of {@link Stream#parEvalMap} or
+ * {@link Stream#parEvalMapUnordered}.
+ *
+ * A producer fiber pulls the upstream and starts a task for every element, as long as fewer
+ * than {@code maxConcurrent} tasks have been started and not emitted yet. The consumer (the
+ * downstream) waits for results:
+ * <ul>
+ * <li>in ordered mode, all started tasks are kept in the order of the upstream, and the consumer
+ * emits the completed prefix of them, so the queue of tasks works as a reorder buffer;</li>
+ * <li>in unordered mode, the queue only has completed tasks in the order of completion.</li>
+ * </ul>
+ * The first failure (either of the upstream or of a task) cancels everything that's running and
+ * fails the stream. So does the cancellation of the downstream while it is waiting.
+ *
+ * The producer and the tasks are owned by the {@link Scope} that the stream is evaluated in, the
+ * same way as the fibers of {@link ParJoin}: if the downstream stops pulling, they are cancelled
+ * when the operation that consumes the stream is over.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+final class ParEvalMap<A, B> {
+
+  private final Executor executor;
+  private final int maxConcurrent;
+  private final Fn<A, IO<B>> f;
+  private final boolean ordered;
+  private final Pull<A> pull;
+  private final CancellableIOTask producerTask = new CancellableIOTask();
+  private final Scope producerScope = new Scope();
+  private final Runnable finalizer = this::cancel;
+  private Scope scope; // written before the producer is started
+
+  // guarded by this:
+  private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+  private final Set<Task> running = new HashSet<>();
+  private int started = 0; // started and not emitted yet
+  private boolean upstreamDone = false;
+  private boolean cancelled = false;
+  private Throwable error;
+  private Callback<Unit> producer;
+  private Callback<Stream<B>> consumer;
+
+  private ParEvalMap(Executor executor, int maxConcurrent, Fn<A, IO<B>> f, boolean ordered,
+                     Pull<A> pull) {
+    this.executor = executor;
+    this.maxConcurrent = maxConcurrent;
+    this.f = f;
+    this.ordered = ordered;
+    this.pull = pull;
+  }
+
+  static <A, B> Stream<B> parEvalMap(Stream<A> stream, Executor executor, int maxConcurrent,
+                                     Fn<A, IO<B>> f, boolean ordered) {
+    if (maxConcurrent <= 0) {
+      throw new IllegalArgumentException("maxConcurrent must be positive: " + maxConcurrent);
+    }
+
+    return stream.through(pull -> new ParEvalMap<>(executor, maxConcurrent, f, ordered, pull)
+        .stream());
+  }
+
+  private Stream<B> stream() {
+    return Stream.Defer(Scope.current().flatMap(current -> {
+      scope = current;
+      scope.register(finalizer);
+      startProducer();
+      return emit();
+    }));
+  }
+
+  private void startProducer() {
+    final Callback<Unit> callback = new Callback<Unit>() {
+      @Override
+      public void success(Unit value) {
+      }
+
+      @Override
+      public void failure(Throwable err) {
+        fail(err);
+      }
+    };
+    IORun.runAsync(IO.forked(executor).chain(produce()), producerTask, callback, executor,
+                   producerScope);
+  }
+
+  private IO<Unit> produce() {
+    return acquire()
+        .flatMap(u -> pull.hasNext())
+        .flatMap(has -> {
+          if (!has) {
+            upstreamDone();
+            return IO.unit;
+          }
+          start(pull.next());
+          return produce();
+        });
+  }
+
+  /**
+   * Wait until fewer than {@code maxConcurrent} tasks are started and not emitted.
+   */
+  private IO<Unit> acquire() {
+    return new Async<>(cb -> {
+      synchronized (this) {
+        if (started >= maxConcurrent) {
+          producer = cb;
+          return IO.unit;
+        }
+        started++;
+      }
+      cb.success(Unit.unit);
+      return IO.unit;
+    });
+  }
+
+  private void start(A elem) {
+    final Task task = new Task();
+
+    synchronized (this) {
+      if (cancelled) {
+        return;
+      }
+      if (ordered) {
+        tasks.add(task);
+      }
+      running.add(task);
+    }
+
+    IORun.runAsync(IO.forked(executor).chain(IO.suspend(() -> f.ap(elem))), task, task, executor,
+                   producerScope);
+  }
+
+  private void upstreamDone() {
+    synchronized (this) {
+      upstreamDone = true;
+      // release the permit that was acquired for the next element:
+      started--;
+    }
+    check();
+  }
+
+  private IO<Stream<B>> emit() {
+    return new Async<>(cb -> {
+      synchronized (this) {
+        consumer = cb;
+      }
+      check();
+      return IO.delay(this::cancel);
+    });
+  }
+
+  /**
+   * Complete the waiting consumer if there is anything for it.
+   */
+  private void check() {
+    final Callback<Stream<B>> cb;
+    final Throwable failure;
+    final List<B> results = new ArrayList<>();
+    Callback<Unit> wakeUp = null;
+
+    synchronized (this) {
+      if (consumer == null) {
+        return;
+      }
+
+      failure = error;
+      if (failure == null) {
+        while (!tasks.isEmpty() && tasks.peek().completed) {
+          results.add(tasks.poll().value);
+        }
+
+        if (results.isEmpty() && !(upstreamDone && started == 0)) {
+          return;
+        }
+
+        started -= results.size();
+        if (producer != null && started < maxConcurrent) {
+          wakeUp = producer;
+          producer = null;
+          started++;
+        }
+      }
+
+      cb = consumer;
+      consumer = null;
+    }
+
+    if (failure != null) {
+      scope.remove(finalizer);
+      cb.failure(failure);
+    } else if (results.isEmpty()) {
+      scope.remove(finalizer);
+      producerScope.close();
+      cb.success(Stream.Nil());
+    } else {
+      cb.success(Stream.ChunkCons(Chunk.ofAll(results), Stream.Defer(emit())));
+    }
+
+    if (wakeUp != null) {
+      // the producer continues on its own thread, not on the consumer's one:
+      final Callback<Unit> resume = wakeUp;
+      executor.execute(() -> resume.success(Unit.unit));
+    }
+  }
+
+  private void fail(Throwable err) {
+    synchronized (this) {
+      if (error == null) {
+        error = err;
+      }
+    }
+    cancel();
+    check();
+  }
+
+  private void cancel() {
+    final List<Task> toCancel;
+
+    synchronized (this) {
+      cancelled = true;
+      toCancel = new ArrayList<>(running);
+      running.clear();
+    }
+
+    producerTask.cancel();
+    toCancel.forEach(Task::cancel);
+    producerScope.close();
+  }
+
+  /**
+   * A single started task: both its cancellation token and its result callback.
+   */
+  private final class Task extends CancellableIOTask implements Callback<B> {
+
+    // guarded by ParEvalMap.this:
+    private boolean completed = false;
+    private B value;
+
+    @Override
+    public void success(B result) {
+      synchronized (ParEvalMap.this) {
+        value = result;
+        completed = true;
+        running.remove(this);
+        if (!ordered) {
+          tasks.add(this);
+        }
+      }
+      check();
+    }
+
+    @Override
+    public void failure(Throwable err) {
+      synchronized (ParEvalMap.this) {
+        running.remove(this);
+      }
+      fail(err);
+    }
+  }
+}
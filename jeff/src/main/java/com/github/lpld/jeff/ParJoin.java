@@ -0,0 +1,289 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Pr;
+import com.github.lpld.jeff.data.Unit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * State of a single evaluation of {@link Stream#parJoin}.
+ *
+ * Every inner stream is pulled by its own long-lived producer fiber, that puts the chunks of the
+ * stream into a shared bounded queue. When the queue is full, the producers wait (without
+ * blocking any threads) until the consumer takes something from it. One more producer pulls the
+ * outer stream and starts a producer for every inner stream, as long as fewer than
+ * {@code maxOpen} of them are running.
+ *
+ * The producers read ahead of the consumer: up to {@link #QUEUE_SIZE} chunks are pulled from the
+ * inner streams before anyone asks for them.
+ *
+ * The first failure (of the outer stream or of any inner stream) cancels all the producers and
+ * fails the resulting stream. So does the cancellation of the consumer while it is waiting.
+ *
+ * The producers are owned by the {@link Scope} that the resulting stream is evaluated in: when
+ * the operation that consumes the stream is over, they are cancelled, even if the stream hasn't
+ * been pulled to the end. The streams themselves are pulled in a scope of their own, that is
+ * closed together with the producers.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+final class ParJoin<T> {
+
+  /**
+   * Capacity of the queue, in chunks.
+   */
+  static final int QUEUE_SIZE = 16;
+
+  private final Executor executor;
+  private final int maxOpen;
+  private final Pull<Stream<T>> outer;
+  private final Scope producerScope = new Scope();
+  private final Runnable finalizer = this::cancel;
+  private Scope scope; // written before the producers are started
+
+  // guarded by this:
+  private final ArrayDeque<Chunk<T>> queue = new ArrayDeque<>();
+  private final ArrayDeque<Pr<Chunk<T>, Callback<Unit>>> offers = new ArrayDeque<>();
+  private final Set<Producer> producers = new HashSet<>();
+  private int open = 1; // the outer producer holds a slot while it's pulling the next stream
+  private boolean outerDone = false;
+  private boolean cancelled = false;
+  private Throwable error;
+  private Callback<Unit> opener;
+  private Callback<Stream<T>> consumer;
+
+  private ParJoin(Executor executor, int maxOpen, Pull<Stream<T>> outer) {
+    this.executor = executor;
+    this.maxOpen = maxOpen;
+    this.outer = outer;
+  }
+
+  static <T> Stream<T> parJoin(Executor executor, int maxOpen, Stream<Stream<T>> streams) {
+    if (maxOpen <= 0) {
+      throw new IllegalArgumentException("maxOpen must be positive: " + maxOpen);
+    }
+
+    return streams.through(pull -> new ParJoin<>(executor, maxOpen, pull).stream());
+  }
+
+  private Stream<T> stream() {
+    return Stream.Defer(Scope.current().flatMap(current -> {
+      scope = current;
+      scope.register(finalizer);
+      fork(openNext());
+      return emit();
+    }));
+  }
+
+  private void fork(IO<Unit> io) {
+    final Producer producer = new Producer();
+
+    synchronized (this) {
+      if (cancelled) {
+        return;
+      }
+      producers.add(producer);
+    }
+
+    IORun.runAsync(IO.forked(executor).chain(io), producer, producer, executor, producerScope);
+  }
+
+  /**
+   * Pull the outer stream and start a producer for every inner stream.
+   */
+  private IO<Unit> openNext() {
+    return outer.hasNext().flatMap(has -> {
+      if (!has) {
+        synchronized (this) {
+          outerDone = true;
+          open--;
+        }
+        check();
+        return IO.unit;
+      }
+
+      fork(outer.next().pull().flatMap(this::pump));
+      return acquire().chain(IO.suspend(this::openNext));
+    });
+  }
+
+  /**
+   * Wait until fewer than {@code maxOpen} inner streams are running.
+   */
+  private IO<Unit> acquire() {
+    return new Async<>(cb -> {
+      synchronized (this) {
+        if (open >= maxOpen) {
+          opener = cb;
+          return IO.unit;
+        }
+        open++;
+      }
+      cb.success(Unit.unit);
+      return IO.unit;
+    });
+  }
+
+  private IO<Unit> pump(Pull<T> pull) {
+    return pull.hasNext().flatMap(has -> {
+      if (!has) {
+        closed();
+        return IO.unit;
+      }
+      return offer(pull.nextChunk()).flatMap(u -> pump(pull));
+    });
+  }
+
+  /**
+   * An inner stream has ended: its slot can be given to the next one.
+   */
+  private void closed() {
+    Callback<Unit> wakeUp = null;
+
+    synchronized (this) {
+      if (opener != null) {
+        wakeUp = opener;
+        opener = null;
+      } else {
+        open--;
+      }
+    }
+
+    if (wakeUp != null) {
+      wakeUp.success(Unit.unit);
+    } else {
+      check();
+    }
+  }
+
+  /**
+   * Put a chunk into the queue, or wait until there's space in it.
+   */
+  private IO<Unit> offer(Chunk<T> chunk) {
+    return new Async<>(cb -> {
+      synchronized (this) {
+        if (queue.size() >= QUEUE_SIZE) {
+          offers.add(Pr.of(chunk, cb));
+          return IO.unit;
+        }
+        queue.add(chunk);
+      }
+      check();
+      cb.success(Unit.unit);
+      return IO.unit;
+    });
+  }
+
+  private IO<Stream<T>> emit() {
+    return new Async<>(cb -> {
+      synchronized (this) {
+        consumer = cb;
+      }
+      check();
+      return IO.delay(this::cancel);
+    });
+  }
+
+  /**
+   * Complete the waiting consumer if there is anything for it.
+   */
+  private void check() {
+    final Callback<Stream<T>> cb;
+    final Throwable failure;
+    Chunk<T> chunk = null;
+    Callback<Unit> wakeUp = null;
+
+    synchronized (this) {
+      if (consumer == null) {
+        return;
+      }
+
+      failure = error;
+      if (failure == null) {
+        chunk = queue.poll();
+
+        if (chunk == null && !(outerDone && open == 0)) {
+          return;
+        }
+
+        final Pr<Chunk<T>, Callback<Unit>> offer = offers.poll();
+        if (offer != null) {
+          queue.add(offer._1);
+          wakeUp = offer._2;
+        }
+      }
+
+      cb = consumer;
+      consumer = null;
+    }
+
+    if (failure != null) {
+      scope.remove(finalizer);
+      cb.failure(failure);
+    } else if (chunk == null) {
+      scope.remove(finalizer);
+      producerScope.close();
+      cb.success(Stream.Nil());
+    } else {
+      cb.success(Stream.ChunkCons(chunk, Stream.Defer(emit())));
+    }
+
+    if (wakeUp != null) {
+      // the producer continues on its own thread, not on the consumer's one:
+      final Callback<Unit> producer = wakeUp;
+      executor.execute(() -> producer.success(Unit.unit));
+    }
+  }
+
+  private void fail(Throwable err) {
+    synchronized (this) {
+      if (error == null) {
+        error = err;
+      }
+    }
+    cancel();
+    check();
+  }
+
+  private void cancel() {
+    final List<Producer> toCancel;
+
+    synchronized (this) {
+      cancelled = true;
+      toCancel = new ArrayList<>(producers);
+      producers.clear();
+    }
+
+    toCancel.forEach(Producer::cancel);
+    producerScope.close();
+  }
+
+  /**
+   * Fiber that pulls either the outer stream or one of the inner streams: both its cancellation
+   * token and its result callback. Nobody joins it, so it is a bare run loop rather than a
+   * {@link Fiber}: its outcome goes straight to the ParJoin.
+   */
+  private final class Producer extends CancellableIOTask implements Callback<Unit> {
+
+    @Override
+    public void success(Unit value) {
+      synchronized (ParJoin.this) {
+        producers.remove(this);
+      }
+    }
+
+    @Override
+    public void failure(Throwable err) {
+      synchronized (ParJoin.this) {
+        producers.remove(this);
+      }
+      fail(err);
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * State of a single {@link IO#parTraverse} evaluation.
+ *
+ * At most {@code parallelism} items are processed at the same time: every completed item
+ * passes its permit on to the next unprocessed item. Results are collected into a pre-sized
+ * array, so the order of the items is preserved. The first failure cancels all running items
+ * and fails the whole traversal.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+final class ParTraverse<A, B> {
+
+  private final Executor executor;
+  private final List<A> items;
+  private final Fn<A, IO<B>> f;
+  private final Callback<List<B>> callback;
+
+  private final Object[] results;
+  private final AtomicReferenceArray<Item> running;
+  private final AtomicInteger next = new AtomicInteger();
+  // number of items that are requested to be started and are not started yet:
+  private final AtomicInteger toStart = new AtomicInteger();
+  private final AtomicInteger remaining;
+  private volatile boolean finished = false;
+
+  private ParTraverse(Executor executor, List<A> items, Fn<A, IO<B>> f,
+                      Callback<List<B>> callback) {
+    this.executor = executor;
+    this.items = items;
+    this.f = f;
+    this.callback = callback;
+    this.results = new Object[items.size()];
+    this.running = new AtomicReferenceArray<>(items.size());
+    this.remaining = new AtomicInteger(items.size());
+  }
+
+  static <A, B> IO<List<B>> parTraverse(Executor executor, int parallelism, List<A> items,
+                                        Fn<A, IO<B>> f) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+
+    return IO.suspend(() -> {
+      if (items.isEmpty()) {
+        return IO.pure(Arrays.asList());
+      }
+
+      return new Async<>(cb -> {
+        final ParTraverse<A, B> traverse = new ParTraverse<>(executor, items, f, cb);
+
+        for (int i = 0; i < Math.min(parallelism, items.size()); i++) {
+          traverse.startNext();
+        }
+        return IO.delay(traverse::cancelAll);
+      });
+    });
+  }
+
+  /**
+   * Start the next unprocessed item. If an item completes synchronously (e.g. on a same-thread
+   * executor), its completion requests the next item from inside this call, so instead of
+   * recursing, the request is counted and served by the loop of the outer call.
+   */
+  private void startNext() {
+    if (toStart.getAndIncrement() != 0) {
+      return;
+    }
+
+    do {
+      startOne();
+    } while (toStart.decrementAndGet() != 0);
+  }
+
+  private void startOne() {
+    final int idx = next.getAndIncrement();
+
+    if (idx >= results.length || finished) {
+      return;
+    }
+
+    final Item item = new Item(idx);
+    running.set(idx, item);
+
+    IORun.runAsync(IO.forked(executor).chain(IO.suspend(() -> f.ap(items.get(idx)))),
+                   item, item);
+
+    if (finished) {
+      // the traversal could have failed while this item was being started:
+      item.cancel();
+    }
+  }
+
+  private void cancelAll() {
+    finished = true;
+
+    for (int i = 0; i < running.length(); i++) {
+      final Item item = running.get(i);
+      if (item != null) {
+        item.cancel();
+      }
+    }
+  }
+
+  /**
+   * A single item of the traversal: both its cancellation token and its result callback.
+   */
+  private final class Item extends CancellableIOTask implements Callback<B> {
+
+    private final int idx;
+
+    Item(int idx) {
+      this.idx = idx;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void success(B value) {
+      results[idx] = value;
+      running.set(idx, null);
+
+      if (remaining.decrementAndGet() == 0) {
+        finished = true;
+        callback.success(Arrays.asList((B[]) results));
+      } else {
+        startNext();
+      }
+    }
+
+    @Override
+    public void failure(Throwable err) {
+      if (!finished) {
+        cancelAll();
+        callback.failure(err);
+      }
+    }
+  }
+}
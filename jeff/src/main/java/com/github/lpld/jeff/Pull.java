@@ -0,0 +1,189 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Unit;
+import com.github.lpld.jeff.functions.Fn2;
+
+/**
+ * Mutable cursor over a {@link Stream}, for writing stateful stream stages without allocating
+ * an {@code Optional} and a pair for every element, like {@link Stream#split()} does.
+ *
+ * The cursor keeps the values that are already evaluated (a chunk or a strict head) in a buffer,
+ * so {@link #hasNext()} only needs to evaluate something when the buffer is empty. Otherwise it
+ * returns a constant IO:
+ *
+ * {@code
+ * IO<Long> sum(Pull<Integer> pull, long acc) {
+ *   return pull.hasNext().flatMap(has -> has ? sum(pull, acc + pull.next()) : IO.pure(acc));
+ * }
+ * }
+ *
+ * A cursor is meant to be used by one stage that calls its methods in sequence: the IO returned
+ * by {@link #hasNext()} has to complete before {@link #next()} is called, and the cursor should
+ * not be shared. Cursors are created with {@link Stream#pull()}, and a stage can be attached to a
+ * stream with {@link Stream#through(com.github.lpld.jeff.functions.Fn)}.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+public final class Pull<T> {
+
+  private static final IO<Boolean> TRUE = IO.pure(true);
+  private static final IO<Boolean> FALSE = IO.pure(false);
+
+  private Stream<T> rest;
+
+  // buffer: either a chunk or a single strict head
+  private Chunk<T> chunk = Chunk.empty();
+  private int pos = 0;
+  private T head;
+  private boolean hasHead = false;
+
+  Pull(Stream<T> stream) {
+    this.rest = stream;
+  }
+
+  /**
+   * Number of values that can be taken with {@link #next()} without evaluating anything.
+   */
+  public int buffered() {
+    return hasHead ? 1 : chunk.size() - pos;
+  }
+
+  /**
+   * Check if there are more values, evaluating the stream until the next value is available.
+   */
+  public IO<Boolean> hasNext() {
+    return buffered() > 0 ? TRUE : IO.suspend(this::advance);
+  }
+
+  /**
+   * Take the next value. May only be called when {@link #hasNext()} has returned {@code true}.
+   */
+  public T next() {
+    if (hasHead) {
+      final T value = head;
+      hasHead = false;
+      head = null;
+      return value;
+    }
+    if (pos >= chunk.size()) {
+      throw new IllegalStateException("No buffered values, call hasNext() first");
+    }
+    return chunk.get(pos++);
+  }
+
+  /**
+   * Take all the buffered values at once. Returns an empty chunk if nothing is buffered.
+   */
+  @SuppressWarnings("unchecked")
+  public Chunk<T> nextChunk() {
+    if (hasHead) {
+      return Chunk.wrap(new Object[]{next()}, 0, 1);
+    }
+    final Chunk<T> result = chunk.drop(pos);
+    pos = chunk.size();
+    return result;
+  }
+
+  /**
+   * The rest of the stream, including the buffered values. The cursor should not be used after
+   * that.
+   */
+  public Stream<T> remaining() {
+    final Stream<T> result = Stream.ChunkCons(nextChunk(), rest);
+    rest = Stream.Nil();
+    return result;
+  }
+
+  /**
+   * Fold the rest of the stream.
+   */
+  public <R> IO<R> fold(R z, Fn2<R, T, R> f) {
+    final Fused.Fold<T, R> fold = new Fused.Fold<>(z, f);
+    return drain(fold).map(u -> fold.acc);
+  }
+
+  /**
+   * Push the rest of the values to the sink until it doesn't want any more of them. Values that
+   * are already evaluated are pushed in a loop, and the loop only gets back to the run loop when
+   * there's something to evaluate, or once in a while, so that the IO can be cancelled.
+   */
+  IO<Unit> drain(Fused.Sink<T> sink) {
+    return hasNext().flatMap(has -> {
+      if (!has) {
+        return IO.unit;
+      }
+
+      int pushed = 0;
+      while (pushed++ < Chunk.DEFAULT_SIZE && (buffered() > 0 || advanceStrict())) {
+        if (!sink.push(next())) {
+          return IO.unit;
+        }
+      }
+      return drain(sink);
+    });
+  }
+
+  /**
+   * Fill the buffer from the stream nodes that don't need any evaluation. Returns {@code false}
+   * if the stream has ended or if the next value needs to be evaluated.
+   */
+  @SuppressWarnings("unchecked")
+  boolean advanceStrict() {
+    while (true) {
+      final Stream<T> stream = rest;
+
+      if (stream instanceof PureCons) {
+        final PureCons<T> cons = (PureCons<T>) stream;
+        rest = cons.tail;
+        head = cons.head;
+        hasHead = true;
+        return true;
+      }
+
+      if (stream instanceof ChunkCons) {
+        final ChunkCons<T> cons = (ChunkCons<T>) stream;
+        rest = cons.tail;
+        chunk = cons.chunk;
+        pos = 0;
+        return true;
+      }
+
+      if (stream instanceof Append) {
+        rest = ((Append<T>) stream).step();
+      } else if (stream instanceof Fused) {
+        rest = ((Fused<?, T>) stream).materialize();
+      } else {
+        return false;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private IO<Boolean> advance() {
+    if (advanceStrict()) {
+      return TRUE;
+    }
+
+    final Stream<T> stream = rest;
+
+    if (stream instanceof Cons) {
+      final Cons<T> cons = (Cons<T>) stream;
+      rest = cons.tail;
+      return cons.head.map(h -> {
+        head = h;
+        hasHead = true;
+        return true;
+      });
+    }
+
+    if (stream instanceof Defer) {
+      return ((Defer<T>) stream).evalStream.flatMap(s -> {
+        rest = s;
+        return advance();
+      });
+    }
+
+    return FALSE;
+  }
+}
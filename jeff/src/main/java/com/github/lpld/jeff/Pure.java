@@ -0,0 +1,19 @@
+package com.github.lpld.jeff;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * IO node with an already computed value.
+ *
+ * @author leopold
+ * @since 4/10/18
+ */
+@RequiredArgsConstructor
+class Pure<T> extends IO<T> {
+  final T pure;
+
+  @Override
+  public String toString() {
+    return "pure(" + pure + ")";
+  }
+}
@@ -0,0 +1,97 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Fn;
+import com.github.lpld.jeff.functions.Fn2;
+
+import java.util.Optional;
+
+import lombok.RequiredArgsConstructor;
+
+import static com.github.lpld.jeff.IO.IO;
+import static com.github.lpld.jeff.IO.pure;
+import static com.github.lpld.jeff.IO.suspend;
+
+/**
+ * Stream node with a head that is already evaluated, so that traversing it doesn't need to go
+ * through IO evaluation.
+ */
+@RequiredArgsConstructor
+class PureCons<T> extends Stream<T> {
+
+  final T head;
+  final Stream<T> tail;
+
+  @Override
+  <R> IO<R> doFoldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f) {
+    return suspend(() -> f.ap(head, tail.doFoldRight(z, f)));
+  }
+
+  @Override
+  <R> IO<R> doCollectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f) {
+    return suspend(() -> f.ap(pure(head), tail.doCollectRight(z, f)));
+  }
+
+  @Override
+  public <R> Stream<R> scanLeft(R z, Fn2<R, T, R> f) {
+    return Lazy(() -> {
+      final R r = f.ap(z, head);
+
+      return Cons(r, tail.scanLeft(r, f));
+    });
+  }
+
+  @Override
+  <R> IO<R> doCollectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f) {
+    return tail.doCollectLeft(suspend(() -> f.ap(z, pure(head))), f);
+  }
+
+  @Override
+  public Stream<T> take(int n) {
+    return n <= 0 ? Nil() : new PureCons<>(head, tail.lazyTransform(s -> s.take(n - 1)));
+  }
+
+  @Override
+  public Stream<T> drop(int n) {
+    return n <= 0 ? this : tail.lazyTransform(s -> s.drop(n - 1));
+  }
+
+  @Override
+  public Stream<T> dropWhile(Fn<T, Boolean> p) {
+    return Lazy(() -> p.ap(head) ? tail.dropWhile(p) : this);
+  }
+
+  @Override
+  public <U> Stream<U> flatMap(Fn<T, Stream<U>> f) {
+    return Lazy(() -> f.ap(head).append(tail.flatMap(f)));
+  }
+
+  @Override
+  public <U> Stream<U> mapEval(Fn<T, IO<U>> f) {
+    return SCons(suspend(() -> f.ap(head)), tail.lazyTransform(s -> s.mapEval(f)));
+  }
+
+  @Override
+  public Stream<Chunk<T>> chunks() {
+    return Cons(Chunk.wrap(new Object[]{head}, 0, 1), tail.lazyTransform(Stream::chunks));
+  }
+
+  @Override
+  IO<Optional<IO<T>>> doLazyHead() {
+    return pure(Optional.of(pure(head)));
+  }
+
+  @Override
+  IO<Optional<T>> doHeadOption() {
+    return pure(Optional.of(head));
+  }
+
+  @Override
+  IO<Optional<Cons<T>>> extract() {
+    return pure(Optional.of(new Cons<>(pure(head), tail)));
+  }
+
+  @Override
+  public String toString() {
+    return "PureCons(" + head + "," + tail + ")";
+  }
+}
@@ -0,0 +1,425 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Unit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Asynchronous queue for passing values between fibers.
+ *
+ * {@link #take()} waits while the queue is empty, and {@link #offer(Object)} on a
+ * {@link #bounded(int)} queue waits while it is full. Waiting doesn't block any threads: the
+ * waiting IO is suspended like {@link IO#sleep} is, and it is resumed by the fiber that offers or
+ * takes the next value. What happens when the other kinds of queues are full is described in
+ * {@link #dropping(int)}, {@link #sliding(int)} and {@link #unbounded()}.
+ *
+ * Bounded queues keep the values in a lock-free ring buffer, and the unbounded one in a lock-free
+ * linked queue, so offering to a queue that is not full and taking from a queue that is not empty
+ * doesn't take any locks. A lock is only taken to register a waiting fiber and to hand values
+ * over to the waiting fibers.
+ *
+ * Waiting IOs can be cancelled. A waiting taker is claimed atomically either by the fiber that
+ * hands a value over to it or by the cancellation, so no value is lost: if the cancellation comes
+ * too late, the value that was handed over is put back at the head of the queue (a bounded queue
+ * can briefly hold one value more than its capacity because of that).
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+public final class Queue<T> {
+
+  private final Buffer<T> buffer;
+  private final Overflow overflow;
+
+  // guarded by this:
+  private final ArrayDeque<Taker<T>> takers = new ArrayDeque<>();
+  private final ArrayDeque<Offer<T>> offers = new ArrayDeque<>();
+  // values that were handed over to cancelled takers, they go before the buffer:
+  private final ArrayDeque<T> returned = new ArrayDeque<>();
+
+  // sizes of the queues above, so that the fast paths don't need to take the lock:
+  private volatile int waitingTakers = 0;
+  private volatile int waitingOffers = 0;
+  private volatile int returnedValues = 0;
+
+  private Queue(Buffer<T> buffer, Overflow overflow) {
+    this.buffer = buffer;
+    this.overflow = overflow;
+  }
+
+  /**
+   * Queue of at most {@code capacity} values: {@link #offer(Object)} waits while it is full.
+   */
+  public static <T> Queue<T> bounded(int capacity) {
+    return new Queue<>(new Ring<>(checkCapacity(capacity)), Overflow.WAIT);
+  }
+
+  /**
+   * Queue of at most {@code capacity} values: the values that are offered when it is full are
+   * dropped.
+   */
+  public static <T> Queue<T> dropping(int capacity) {
+    return new Queue<>(new Ring<>(checkCapacity(capacity)), Overflow.DROP_NEWEST);
+  }
+
+  /**
+   * Queue of at most {@code capacity} values: when it is full, the oldest value is dropped to
+   * make room for the offered one.
+   */
+  public static <T> Queue<T> sliding(int capacity) {
+    return new Queue<>(new Ring<>(checkCapacity(capacity)), Overflow.DROP_OLDEST);
+  }
+
+  /**
+   * Queue without a limit on the number of values: {@link #offer(Object)} never waits.
+   */
+  public static <T> Queue<T> unbounded() {
+    return new Queue<>(new Linked<>(), Overflow.WAIT);
+  }
+
+  private static int checkCapacity(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    return capacity;
+  }
+
+  /**
+   * Put a value into the queue. Depending on the kind of the queue, waits while it is full or
+   * drops a value.
+   */
+  public IO<Unit> offer(T value) {
+    Objects.requireNonNull(value, "value");
+
+    return IO.suspend(() -> {
+      if (tryOffer(value)) {
+        return IO.unit;
+      }
+
+      return new Async<>(cb -> {
+        final Offer<T> offer = new Offer<>(value, cb);
+        synchronized (this) {
+          offers.add(offer);
+          waitingOffers = offers.size();
+        }
+        handOver();
+
+        return IO.delay(() -> {
+          synchronized (this) {
+            offers.remove(offer);
+            waitingOffers = offers.size();
+          }
+        });
+      });
+    });
+  }
+
+  /**
+   * Take a value from the queue, waiting while it is empty.
+   */
+  public IO<T> take() {
+    return IO.suspend(() -> {
+      final T value = tryTake();
+      if (value != null) {
+        return IO.pure(value);
+      }
+
+      return new Async<>(cb -> {
+        final Taker<T> taker = new Taker<>(cb);
+        synchronized (this) {
+          takers.add(taker);
+          waitingTakers = takers.size();
+        }
+        handOver();
+
+        return IO.delay(() -> {
+          final boolean waiting = taker.claim();
+          synchronized (this) {
+            if (waiting) {
+              takers.remove(taker);
+              waitingTakers = takers.size();
+            } else {
+              // the value has already been handed over, but the taker won't receive it:
+              returned.addFirst(taker.value);
+              returnedValues = returned.size();
+            }
+          }
+          if (!waiting) {
+            handOver();
+          }
+        });
+      });
+    });
+  }
+
+  /**
+   * Take a value from the queue if there is one, without waiting.
+   */
+  public IO<Optional<T>> poll() {
+    return IO.delay(() -> Optional.ofNullable(tryTake()));
+  }
+
+  /**
+   * Number of values in the queue. The fibers that are waiting to offer values are not counted.
+   */
+  public IO<Integer> size() {
+    return IO.delay(() -> buffer.size() + returnedValues);
+  }
+
+  /**
+   * Take up to {@code max} values that are available without waiting, starting with
+   * {@code first}.
+   */
+  Chunk<T> takeAvailable(T first, int max) {
+    final List<T> values = new ArrayList<>();
+    values.add(first);
+
+    T value;
+    while (values.size() < max && (value = tryTake()) != null) {
+      values.add(value);
+    }
+    return Chunk.ofAll(values);
+  }
+
+  private boolean tryOffer(T value) {
+    if (waitingOffers > 0) {
+      // don't overtake the values that are already waiting:
+      return false;
+    }
+
+    final boolean offered = buffer.offer(value);
+
+    if (!offered) {
+      switch (overflow) {
+        case WAIT:
+          return false;
+        case DROP_NEWEST:
+          return true;
+        case DROP_OLDEST:
+          do {
+            buffer.poll();
+          } while (!buffer.offer(value));
+      }
+    }
+
+    if (waitingTakers > 0) {
+      handOver();
+    }
+    return true;
+  }
+
+  private T tryTake() {
+    if (returnedValues > 0) {
+      synchronized (this) {
+        final T value = returned.poll();
+        returnedValues = returned.size();
+        if (value != null) {
+          return value;
+        }
+      }
+    }
+
+    final T value = buffer.poll();
+
+    if (value != null && waitingOffers > 0) {
+      handOver();
+    }
+    return value;
+  }
+
+  /**
+   * Move the waiting offers into the buffer while there is space in it, and the values from the
+   * buffer to the waiting takers. A taker that has been cancelled meanwhile is skipped, and its
+   * value goes to the next one. The fibers are resumed after the lock is released.
+   */
+  private void handOver() {
+    final List<Runnable> resume = new ArrayList<>();
+
+    synchronized (this) {
+      boolean moved = true;
+      while (moved) {
+        moved = false;
+
+        while (!offers.isEmpty() && buffer.offer(offers.peek().value)) {
+          final Callback<Unit> offerer = offers.poll().callback;
+          resume.add(() -> offerer.success(Unit.unit));
+          moved = true;
+        }
+
+        T value = null;
+        while (!takers.isEmpty()
+               && (value != null || (value = returned.poll()) != null
+                   || (value = buffer.poll()) != null)) {
+          final Taker<T> taker = takers.poll();
+          taker.value = value;
+          if (taker.claim()) {
+            final T taken = value;
+            resume.add(() -> taker.callback.success(taken));
+            value = null;
+            moved = true;
+          }
+        }
+        if (value != null) {
+          // all the remaining takers have been cancelled:
+          returned.addFirst(value);
+        }
+      }
+
+      waitingOffers = offers.size();
+      waitingTakers = takers.size();
+      returnedValues = returned.size();
+    }
+
+    resume.forEach(Runnable::run);
+  }
+
+  @Override
+  public String toString() {
+    return "Queue(" + buffer.size() + ")";
+  }
+
+  private enum Overflow {
+    WAIT, DROP_NEWEST, DROP_OLDEST
+  }
+
+  /**
+   * Waiting taker. It is claimed exactly once: either by {@link #handOver()}, that sets the
+   * {@code value} before claiming it, or by the cancellation.
+   */
+  private static final class Taker<T> {
+
+    final Callback<T> callback;
+    final AtomicBoolean claimed = new AtomicBoolean();
+    T value;
+
+    Taker(Callback<T> callback) {
+      this.callback = callback;
+    }
+
+    boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+  }
+
+  private static final class Offer<T> {
+
+    final T value;
+    final Callback<Unit> callback;
+
+    Offer(T value, Callback<Unit> callback) {
+      this.value = value;
+      this.callback = callback;
+    }
+  }
+
+  /**
+   * Lock-free multi-producer multi-consumer storage of the values. {@code poll} returns
+   * {@code null} when it's empty.
+   */
+  private interface Buffer<T> {
+
+    boolean offer(T value);
+
+    T poll();
+
+    int size();
+  }
+
+  /**
+   * Bounded ring buffer. Every slot has a sequence number that tells whether the slot is ready
+   * for the producer or for the consumer at a given position, so the producers and the consumers
+   * only need to compete for the position with a CAS.
+   */
+  private static final class Ring<T> implements Buffer<T> {
+
+    private final int capacity;
+    private final AtomicReferenceArray<T> values;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong(); // next position to poll
+    private final AtomicLong tail = new AtomicLong(); // next position to offer
+
+    Ring(int capacity) {
+      this.capacity = capacity;
+      this.values = new AtomicReferenceArray<>(capacity);
+      this.sequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++) {
+        sequences.set(i, i);
+      }
+    }
+
+    @Override
+    public boolean offer(T value) {
+      while (true) {
+        final long pos = tail.get();
+        final int idx = (int) (pos % capacity);
+        final long diff = sequences.get(idx) - pos;
+
+        if (diff == 0) {
+          if (tail.compareAndSet(pos, pos + 1)) {
+            values.lazySet(idx, value);
+            sequences.set(idx, pos + 1);
+            return true;
+          }
+        } else if (diff < 0) {
+          // the slot hasn't been released by the consumer of the previous round yet:
+          return false;
+        }
+      }
+    }
+
+    @Override
+    public T poll() {
+      while (true) {
+        final long pos = head.get();
+        final int idx = (int) (pos % capacity);
+        final long diff = sequences.get(idx) - (pos + 1);
+
+        if (diff == 0) {
+          if (head.compareAndSet(pos, pos + 1)) {
+            final T value = values.get(idx);
+            values.lazySet(idx, null);
+            sequences.set(idx, pos + capacity);
+            return value;
+          }
+        } else if (diff < 0) {
+          // the slot hasn't been filled by the producer yet:
+          return null;
+        }
+      }
+    }
+
+    @Override
+    public int size() {
+      return (int) Math.max(0, Math.min(capacity, tail.get() - head.get()));
+    }
+  }
+
+  private static final class Linked<T> implements Buffer<T> {
+
+    private final ConcurrentLinkedQueue<T> values = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public boolean offer(T value) {
+      return values.offer(value);
+    }
+
+    @Override
+    public T poll() {
+      return values.poll();
+    }
+
+    @Override
+    public int size() {
+      return values.size();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.github.lpld.jeff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * State of a single {@link IO#raceAll} evaluation.
+ *
+ * All participants share one atomic winner slot. The first participant that succeeds takes the
+ * slot, cancels all the others and completes the race. Failures are only counted: the race
+ * fails when every participant has failed, with the first error. The rest of the errors are
+ * dropped rather than attached to the first one, since the errors belong to the caller and may
+ * be shared.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+final class RaceAll<T> {
+
+  private static final int NO_WINNER = -1;
+
+  private final Callback<T> callback;
+  private final List<Participant> participants;
+  private final AtomicInteger winner = new AtomicInteger(NO_WINNER);
+  private final AtomicInteger remaining;
+  private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+  private RaceAll(int size, Callback<T> callback) {
+    this.callback = callback;
+    this.participants = new ArrayList<>(size);
+    this.remaining = new AtomicInteger(size);
+  }
+
+  static <T> IO<T> raceAll(Executor executor, List<IO<T>> ios) {
+    if (ios.isEmpty()) {
+      throw new IllegalArgumentException("Cannot race an empty list of IOs");
+    }
+
+    return new Async<>(cb -> {
+      final RaceAll<T> race = new RaceAll<>(ios.size(), cb);
+
+      // All participants are created before any of them starts, so that an early winner is
+      // able to cancel the ones that have not been started yet.
+      for (int i = 0; i < ios.size(); i++) {
+        race.participants.add(race.new Participant(i));
+      }
+      for (int i = 0; i < ios.size(); i++) {
+        final RaceAll<T>.Participant participant = race.participants.get(i);
+        IORun.runAsync(IO.forked(executor).chain(ios.get(i)), participant, participant);
+      }
+
+      return IO.delay(() -> race.cancelAllBut(NO_WINNER));
+    });
+  }
+
+  private void cancelAllBut(int idx) {
+    for (int i = 0; i < participants.size(); i++) {
+      if (i != idx) {
+        participants.get(i).cancel();
+      }
+    }
+  }
+
+  /**
+   * A single participant of the race: both its cancellation token and its result callback.
+   */
+  private final class Participant extends CancellableIOTask implements Callback<T> {
+
+    private final int idx;
+
+    Participant(int idx) {
+      this.idx = idx;
+    }
+
+    @Override
+    public void success(T value) {
+      if (winner.compareAndSet(NO_WINNER, idx)) {
+        cancelAllBut(idx);
+        callback.success(value);
+      }
+    }
+
+    @Override
+    public void failure(Throwable err) {
+      error.compareAndSet(null, err);
+
+      if (remaining.decrementAndGet() == 0 && winner.compareAndSet(NO_WINNER, idx)) {
+        callback.failure(error.get());
+      }
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.github.lpld.jeff;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * IO node that handles the failure of an IO.
+ *
+ * @author leopold
+ * @since 4/10/18
+ */
+@RequiredArgsConstructor
+class Recover<T> extends IO<T> {
+  final IO<T> io;
+  final Function<Throwable, Optional<IO<T>>> recover;
+
+  @Override
+  public String toString() {
+    return "Recover(" + io + ")";
+  }
+}
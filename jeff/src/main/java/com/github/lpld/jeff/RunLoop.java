@@ -0,0 +1,317 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Unit;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * State of a single IO evaluation: the continuation stack, cancellation token and the callback
+ * that receives the result.
+ *
+ * When created without a callback, the loop runs in synchronous mode: the result is stored in
+ * the loop itself and can be obtained with {@link RunLoop#join()}. A blocking promise is created
+ * only when the loop reaches an async boundary.
+ */
+class RunLoop implements Runnable {
+
+  /**
+   * Number of loop iterations after which the loop cedes its thread by re-submitting itself to
+   * its current executor. Can be configured with {@code jeff.autoCedeThreshold} system property,
+   * zero or negative value disables auto-ceding.
+   */
+  static final int AUTO_CEDE_THRESHOLD = Integer.getInteger("jeff.autoCedeThreshold", 1024);
+
+  private final CallStack stack = new CallStack();
+  private final RunningIO runningIO;
+  private final Scope scope;
+  private Callback<Object> callback;
+
+  // executor of the last fork, if any:
+  private Executor executor;
+  // IO to continue with after the loop is shifted to the executor:
+  private IO<Object> shifted;
+
+  // used only in synchronous mode:
+  private CompletableFuture<Object> blocking;
+  private Object result;
+  private Throwable error;
+
+  RunLoop(RunningIO runningIO, Callback<Object> callback) {
+    this(runningIO, callback, null, Scope.ROOT);
+  }
+
+  RunLoop(RunningIO runningIO, Callback<Object> callback, Executor executor, Scope scope) {
+    this.runningIO = runningIO;
+    this.callback = callback;
+    this.executor = executor;
+    this.scope = scope;
+  }
+
+  /**
+   * Executor of the last fork, or {@code null} if the loop hasn't been forked.
+   */
+  Executor executor() {
+    return executor;
+  }
+
+  /**
+   * Scope that the resources opened by this loop are registered in.
+   */
+  Scope scope() {
+    return scope;
+  }
+
+  @SuppressWarnings("unchecked")
+  void loop(IO<?> start) {
+    run((IO<Object>) start, null, null);
+  }
+
+  /**
+   * Continue the loop after an async boundary with the result delivered to {@code callback}.
+   */
+  void resume(AsyncCallback<?> callback) {
+    if (runningIO.resumed()) {
+      run(null, callback.value, callback.error);
+    }
+  }
+
+  /**
+   * Evaluate {@code io} or, if it is {@code null}, continue with {@code value} or {@code error}.
+   */
+  @SuppressWarnings("unchecked")
+  private void run(IO<Object> io, Object value, Throwable error) {
+
+    int iterations = 0;
+
+    while (true) {
+      try {
+        if (error != null) {
+          final Throwable err = error;
+          error = null;
+          throw err;
+        }
+
+        if (io != null) {
+          if (++iterations == AUTO_CEDE_THRESHOLD && executor != null) {
+            // giving other tasks a chance to run on this executor:
+            shift(executor, io);
+            return;
+          }
+
+          if (io instanceof Bind) {
+            stack.push(io);
+            io = ((Bind<Object, Object>) io).source;
+            continue;
+          }
+
+          if (io instanceof Map) {
+            stack.push(io);
+            io = ((Map<Object, Object>) io).source;
+            continue;
+          }
+
+          if (io instanceof Recover) {
+            stack.push(io);
+            io = ((Recover<Object>) io).io;
+            continue;
+          }
+
+          if (io instanceof Suspend) {
+            io = ((Suspend<Object>) io).resume.ap();
+            continue;
+          }
+
+          if (io instanceof Fail) {
+            throw ((Fail<Object>) io).err.ap();
+          }
+
+          if (io instanceof Fork) {
+            final Executor forkTo = ((Fork<Object>) io).executor;
+
+            if (forkTo != null || executor != null) {
+              executor = forkTo != null ? forkTo : executor;
+              shift(executor, null);
+              return;
+            }
+
+            // ceding without an executor is a no-op:
+            value = Unit.unit;
+          } else if (io instanceof Async) {
+            if (!runningIO.suspending()) {
+              cancelled();
+              return;
+            }
+
+            final AsyncCallback<Object> callback = new AsyncCallback<>(this);
+            final IO<?> cancelAction;
+
+            try {
+              cancelAction = ((Async<Object>) io).cb.ap(callback);
+            } catch (Throwable err) {
+              if (!runningIO.resumed()) {
+                cancelled();
+                return;
+              }
+              throw err;
+            }
+
+            prepareSuspend();
+
+            if (!runningIO.suspended(this, cancelAction)) {
+              // the loop is completed by the cancellation
+              return;
+            }
+
+            if (callback.suspend()) {
+              // the loop will be resumed by the callback
+              return;
+            }
+
+            if (!runningIO.resumed()) {
+              // cancelled, result is dropped
+              return;
+            }
+
+            // the callback was called while the async action was being registered, so we
+            // continue on current thread instead of growing the stack:
+            io = null;
+            value = callback.value;
+            error = callback.error;
+            continue;
+          } else {
+            value = io instanceof Pure
+                    ? ((Pure<Object>) io).pure
+                    : ((Delay<Object>) io).thunk.ap();
+          }
+        }
+
+        // feeding the value to pending frames: maps are applied in place until we reach a bind
+        // that produces the next IO to evaluate.
+        io = null;
+        while (io == null && !stack.isEmpty()) {
+          final IO<Object> frame = stack.pop();
+
+          if (frame instanceof Map) {
+            value = ((Map<Object, Object>) frame).f.ap(value);
+          } else if (frame instanceof Bind) {
+            io = ((Bind<Object, Object>) frame).f.ap(value);
+          }
+        }
+
+        if (io == null) {
+          succeed(value);
+          return;
+        }
+      } catch (Throwable err) {
+        io = stack.recover(err);
+
+        if (io == null) {
+          fail(err);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Wait for the result of a loop that was started in synchronous mode.
+   */
+  Object join() {
+    if (blocking == null) {
+      return error == null ? result : WrappedError.throwWrapped(error);
+    }
+
+    try {
+      return blocking.get();
+    } catch (InterruptedException err) {
+      return WrappedError.throwWrapped(err);
+    } catch (ExecutionException err) {
+      return WrappedError.throwWrapped(err.getCause());
+    }
+  }
+
+  /**
+   * Continue the loop after it has been shifted to an executor.
+   */
+  @Override
+  public void run() {
+    if (runningIO.resumed()) {
+      final IO<Object> io = shifted;
+      shifted = null;
+      run(io, Unit.unit, null);
+    }
+  }
+
+  /**
+   * Suspend the loop and continue it on {@code executor}, starting with {@code io}, or with
+   * {@code Unit} value if {@code io} is null.
+   */
+  private void shift(Executor executor, IO<Object> io) throws Throwable {
+    if (!runningIO.suspending()) {
+      cancelled();
+      return;
+    }
+
+    prepareSuspend();
+
+    if (!runningIO.suspended(this, IO.unit)) {
+      // the loop is completed by the cancellation
+      return;
+    }
+
+    shifted = io;
+
+    try {
+      executor.execute(this);
+    } catch (Throwable err) {
+      shifted = null;
+      if (runningIO.resumed()) {
+        throw err;
+      }
+    }
+  }
+
+  private void prepareSuspend() {
+    if (callback == null) {
+      // synchronous loop might be completed on another thread from now on:
+      blocking = new CompletableFuture<>();
+      callback = Callback.completing(blocking);
+    }
+  }
+
+  /**
+   * Complete the loop with {@link CancellationException}.
+   */
+  void cancelled() {
+    fail(new CancellationException());
+  }
+
+  /**
+   * Complete the loop with {@link CancellationException} after its cancel action has failed with
+   * {@code err}. The error becomes the cause of the exception.
+   */
+  void cancelled(Throwable err) {
+    final CancellationException cancelled = new CancellationException();
+    cancelled.initCause(err);
+    fail(cancelled);
+  }
+
+  private void succeed(Object value) {
+    if (callback == null) {
+      result = value;
+    } else {
+      callback.success(value);
+    }
+  }
+
+  private void fail(Throwable err) {
+    if (callback == null) {
+      error = err;
+    } else {
+      callback.failure(err);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.LList.LCons;
+import com.github.lpld.jeff.LList.LNil;
+import com.github.lpld.jeff.data.Unit;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Fiber that is run by {@link RunLoop}. It receives the result of the loop and passes it
+ * to everyone who joins it.
+ */
+class RunningFiber<T> extends Fiber<T> implements Callback<T> {
+
+  private static final Object DONE = new Object();
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<RunningFiber, Object> STATE =
+      AtomicReferenceFieldUpdater.newUpdater(RunningFiber.class, Object.class, "state");
+  @SuppressWarnings("rawtypes")
+  private static final AtomicIntegerFieldUpdater<RunningFiber> LISTED =
+      AtomicIntegerFieldUpdater.newUpdater(RunningFiber.class, "listed");
+  @SuppressWarnings("rawtypes")
+  private static final AtomicIntegerFieldUpdater<RunningFiber> DEAD =
+      AtomicIntegerFieldUpdater.newUpdater(RunningFiber.class, "dead");
+
+  final CancellableIO task = CancellableIO.create();
+
+  // either a list of listeners that are waiting for the result, or DONE
+  private volatile Object state = LNil.instance();
+  // number of listeners in the list, and how many of them have been cancelled (approximate):
+  private volatile int listed = 0;
+  private volatile int dead = 0;
+
+  private T value;
+  private Throwable error;
+
+  @Override
+  public IO<T> join() {
+    return new Async<>(cb -> {
+      final Listener<T> listener = listen(cb);
+      return IO.delay(() -> unlisten(listener));
+    });
+  }
+
+  @Override
+  public IO<Unit> cancel() {
+    return IO.delay(task::cancel);
+  }
+
+  @Override
+  public void success(T value) {
+    this.value = value;
+    complete();
+  }
+
+  @Override
+  public void failure(Throwable err) {
+    this.error = err;
+    complete();
+  }
+
+  /**
+   * Register a callback that will receive the result of the fiber.
+   */
+  @SuppressWarnings("unchecked")
+  private Listener<T> listen(Callback<T> callback) {
+    final Listener<T> listener = new Listener<>(callback);
+
+    while (true) {
+      final Object st = state;
+
+      if (st == DONE) {
+        notify(callback);
+        return listener;
+      }
+
+      if (STATE.compareAndSet(this, st, ((LList<Listener<T>>) st).prepend(listener))) {
+        LISTED.incrementAndGet(this);
+        return listener;
+      }
+    }
+  }
+
+  /**
+   * Forget the callback of a cancelled joiner. The listener itself stays in the list until more
+   * than a half of the list is cancelled, and then all the cancelled listeners are removed at
+   * once, so the removal costs O(1) amortized.
+   */
+  private void unlisten(Listener<T> listener) {
+    listener.callback = null;
+
+    if (DEAD.incrementAndGet(this) * 2 > listed) {
+      purge();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void purge() {
+    while (true) {
+      final Object st = state;
+
+      if (st == DONE) {
+        return;
+      }
+
+      LList<Listener<T>> alive = LNil.instance();
+      int count = 0;
+      for (LList<Listener<T>> l = (LList<Listener<T>>) st; l.isNotEmpty();
+           l = ((LCons<Listener<T>>) l).tail) {
+        final Listener<T> listener = ((LCons<Listener<T>>) l).head;
+        if (listener.callback != null) {
+          alive = alive.prepend(listener);
+          count++;
+        }
+      }
+
+      if (STATE.compareAndSet(this, st, alive)) {
+        listed = count;
+        dead = 0;
+        return;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void complete() {
+    LList<Listener<T>> listeners = (LList<Listener<T>>) STATE.getAndSet(this, DONE);
+
+    while (listeners.isNotEmpty()) {
+      final Callback<T> callback = ((LCons<Listener<T>>) listeners).head.callback;
+      if (callback != null) {
+        notify(callback);
+      }
+      listeners = ((LCons<Listener<T>>) listeners).tail;
+    }
+  }
+
+  private void notify(Callback<T> callback) {
+    if (error != null) {
+      callback.failure(error);
+    } else {
+      callback.success(value);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Fiber(" + (state == DONE ? (error != null ? error : value) : "running") + ")";
+  }
+
+  /**
+   * Joiner that is waiting for the result. The callback is cleared when the joiner is cancelled.
+   */
+  private static final class Listener<T> {
+
+    volatile Callback<T> callback;
+
+    Listener(Callback<T> callback) {
+      this.callback = callback;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.github.lpld.jeff;
+
+/**
+ * Cancellation token of a running IO. The run loop notifies it about every async boundary.
+ */
+interface RunningIO {
+
+  /**
+   * Called before an async action is registered. Returns {@code false} if the IO is cancelled
+   * and must not proceed.
+   */
+  boolean suspending();
+
+  /**
+   * Called after the async action is registered. Returns {@code false} if the IO has been
+   * cancelled during the registration, in which case {@code cancelAction} is executed, and the
+   * loop is completed by the cancellation.
+   */
+  boolean suspended(RunLoop runLoop, IO<?> cancelAction);
+
+  /**
+   * Called when the result of the async action is available. Returns {@code false} if the IO has
+   * been cancelled and the result must be dropped.
+   */
+  boolean resumed();
+}
@@ -0,0 +1,76 @@
+package com.github.lpld.jeff;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer that is used by time-based IOs and streams, such as {@link IO#sleep(Scheduler, long)}
+ * and {@link Stream#tick(Scheduler, long)}.
+ *
+ * There are several implementations: {@link Scheduler#of(ScheduledExecutorService)}, that
+ * adapts a standard scheduled executor, {@link HashedWheelScheduler}, that is optimized for
+ * large numbers of pending timers, and {@link VirtualScheduler}, that runs in virtual time.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+@FunctionalInterface
+public interface Scheduler {
+
+  /**
+   * Run {@code task} after {@code millis} milliseconds.
+   */
+  Task schedule(long millis, Runnable task);
+
+  /**
+   * Clock that this scheduler measures time with.
+   */
+  default Clock clock() {
+    return Clock.system();
+  }
+
+  /**
+   * Run {@code task} periodically: first after {@code initialDelay} milliseconds and then every
+   * {@code period} milliseconds. Executions are scheduled relative to the start time rather than
+   * to the previous execution, so the schedule does not drift.
+   *
+   * The default implementation re-schedules the task with {@link #schedule} after every
+   * execution.
+   */
+  default Task scheduleAtFixedRate(long initialDelay, long period, Runnable task) {
+    return FixedRateTask.start(this, initialDelay, period, task);
+  }
+
+  /**
+   * Handle of a scheduled task.
+   */
+  @FunctionalInterface
+  interface Task {
+
+    /**
+     * Cancel the task. Does nothing if the task has already been run or cancelled.
+     */
+    void cancel();
+  }
+
+  /**
+   * Scheduler that runs tasks on a given {@link ScheduledExecutorService}.
+   */
+  static Scheduler of(ScheduledExecutorService executor) {
+    return new Scheduler() {
+      @Override
+      public Task schedule(long millis, Runnable task) {
+        final ScheduledFuture<?> future = executor.schedule(task, millis, TimeUnit.MILLISECONDS);
+        return () -> future.cancel(false);
+      }
+
+      @Override
+      public Task scheduleAtFixedRate(long initialDelay, long period, Runnable task) {
+        final ScheduledFuture<?> future =
+            executor.scheduleAtFixedRate(task, initialDelay, period, TimeUnit.MILLISECONDS);
+        return () -> future.cancel(false);
+      }
+    };
+  }
+}
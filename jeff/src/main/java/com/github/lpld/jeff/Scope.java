@@ -0,0 +1,136 @@
+package com.github.lpld.jeff;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Owner of the resources that are opened while a stream is being consumed.
+ *
+ * Every terminal operation of a {@link Stream} (a fold, {@code headOption}, {@code toList}, etc.)
+ * runs in its own scope, that is closed when the operation completes, fails or is cancelled.
+ * Stream sources that keep something running in the background (like the fibers of
+ * {@link Stream#parJoin} or the timer of {@link Stream#tickAtFixedRate}) register a finalizer in
+ * the scope they are evaluated in, so that they are stopped even if the consumer doesn't pull
+ * them to the end. A source that has stopped on its own removes its finalizer.
+ *
+ * The scope is a property of the run loop (see {@link AsyncCallback#scope()}). Loops that don't
+ * consume any stream have the {@link #ROOT} scope, that is never closed.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+final class Scope {
+
+  /**
+   * Scope of the loops that are not inside of any terminal stream operation. Nothing is
+   * registered in it.
+   */
+  static final Scope ROOT = new Scope();
+
+  // guarded by this, null when the scope is closed:
+  private Set<Runnable> finalizers = new LinkedHashSet<>();
+
+  /**
+   * Scope of the current run loop.
+   */
+  static IO<Scope> current() {
+    return new Async<>(cb -> {
+      cb.success(cb.scope());
+      return IO.unit;
+    });
+  }
+
+  /**
+   * Run the IO in a new scope, that is closed after the IO completes, fails or is cancelled.
+   * The IO is run in a separate loop, that inherits the executor of the enclosing one.
+   */
+  static <T> IO<T> scoped(IO<T> io) {
+    return new Async<>(cb -> {
+      final Scope scope = new Scope();
+      final CancellableIOTask task = new CancellableIOTask();
+
+      IORun.runAsync(io, task, new Callback<T>() {
+        @Override
+        public void success(T value) {
+          final Throwable err = scope.close();
+          if (err == null) {
+            cb.success(value);
+          } else {
+            cb.failure(err);
+          }
+        }
+
+        @Override
+        public void failure(Throwable err) {
+          scope.close();
+          cb.failure(err);
+        }
+      }, cb.executor(), scope);
+
+      return IO.delay(task::cancel);
+    });
+  }
+
+  /**
+   * Register a finalizer. If the scope has already been closed, the finalizer is run
+   * immediately.
+   */
+  void register(Runnable finalizer) {
+    if (this == ROOT) {
+      return;
+    }
+
+    synchronized (this) {
+      if (finalizers != null) {
+        finalizers.add(finalizer);
+        return;
+      }
+    }
+    finalizer.run();
+  }
+
+  /**
+   * Remove a finalizer that is not needed anymore.
+   */
+  void remove(Runnable finalizer) {
+    if (this == ROOT) {
+      return;
+    }
+
+    synchronized (this) {
+      if (finalizers != null) {
+        finalizers.remove(finalizer);
+      }
+    }
+  }
+
+  /**
+   * Run all the finalizers, in the reverse order of registration. Returns the first error thrown
+   * by them, or {@code null}.
+   */
+  Throwable close() {
+    final List<Runnable> toRun;
+
+    synchronized (this) {
+      if (finalizers == null) {
+        return null;
+      }
+      toRun = new ArrayList<>(finalizers);
+      finalizers = null;
+    }
+
+    Throwable error = null;
+    for (int i = toRun.size() - 1; i >= 0; i--) {
+      try {
+        toRun.get(i).run();
+      } catch (Throwable err) {
+        if (error == null) {
+          error = err;
+        }
+      }
+    }
+    return error;
+  }
+}
@@ -8,17 +8,22 @@ import com.github.lpld.jeff.functions.Fn2;
 import com.github.lpld.jeff.functions.Xn;
 import com.github.lpld.jeff.functions.Xn0;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Spliterator;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
-import lombok.RequiredArgsConstructor;
 
 import static com.github.lpld.jeff.IO.IO;
 import static com.github.lpld.jeff.IO.pure;
@@ -56,7 +61,22 @@ public abstract class Stream<T> {
    * Create a stream by combining a head and a tail.
    */
   public static <T> Stream<T> Cons(T head, Stream<T> tail) {
-    return SCons(pure(head), tail);
+    return new PureCons<>(head, tail);
+  }
+
+  /**
+   * Create a stream by combining a chunk of values and a tail. If the chunk is empty, the tail
+   * itself is returned.
+   */
+  public static <T> Stream<T> ChunkCons(Chunk<T> chunk, Stream<T> tail) {
+    return chunk.isEmpty() ? tail : new ChunkCons<>(chunk, tail);
+  }
+
+  /**
+   * Create a stream that consists of the elements of a given chunk.
+   */
+  public static <T> Stream<T> chunk(Chunk<T> chunk) {
+    return ChunkCons(chunk, Nil());
   }
 
   /**
@@ -66,6 +86,17 @@ public abstract class Stream<T> {
     return new Defer<>(streamEval);
   }
 
+  /**
+   * The values that have been computed before {@code err} was thrown, followed by the failure.
+   *
+   * Operators that apply a user function to a whole chunk in one loop use it when the function
+   * throws, so that the consumer still gets the values that precede the failed element, like it
+   * would with a stream of single elements.
+   */
+  static <T> Stream<T> failAfter(Chunk<T> computed, Throwable err) {
+    return ChunkCons(computed, Defer(IO.fail(() -> err)));
+  }
+
   /**
    * Shortcut for {@code Stream.Defer(IO.delay(streamEval))}.
    */
@@ -78,7 +109,7 @@ public abstract class Stream<T> {
    */
   @SafeVarargs
   public static <T> Stream<T> of(T... elements) {
-    return fromList(Arrays.asList(elements), IO::pure);
+    return chunk(Chunk.of(elements));
   }
 
   /**
@@ -100,16 +131,145 @@ public abstract class Stream<T> {
 
   /**
    * Create a stream of elements of a given iterable.
+   *
+   * The elements are not copied upfront: they are pulled from the iterable in chunks as the
+   * stream is consumed. Random access lists are read by index, other iterables get a new
+   * iterator every time the stream is evaluated.
    */
+  @SuppressWarnings("unchecked")
   public static <T> Stream<T> ofAll(Iterable<T> elems) {
-    return elems instanceof List ? fromList(((List<T>) elems), IO::pure)
-                                 : fromIterable(elems, IO::pure);
+    if (elems instanceof List && elems instanceof RandomAccess) {
+      return fromIndexed((List<T>) elems, 0);
+    }
+    return Lazy(() -> fromIterator(elems.iterator()));
+  }
+
+  /**
+   * Create a stream of elements of a given array. The array is not copied, it is read in chunks
+   * as the stream is consumed.
+   */
+  public static <T> Stream<T> ofAll(T[] elems) {
+    return fromIndexed(Arrays.asList(elems), 0);
+  }
+
+  /**
+   * Create a stream that pulls the elements from a given iterator in chunks as the stream is
+   * consumed. Since the iterator can't be rewound, such stream can only be consumed once.
+   */
+  public static <T> Stream<T> fromIterator(Iterator<T> iterator) {
+    return Lazy(() -> {
+      final Object[] values = new Object[Chunk.DEFAULT_SIZE];
+      int size = 0;
+      while (size < values.length && iterator.hasNext()) {
+        values[size++] = iterator.next();
+      }
+      if (size == 0) {
+        return Nil();
+      }
+      final Object[] chunk = size == values.length ? values : Arrays.copyOf(values, size);
+      return ChunkCons(Chunk.wrap(chunk, 0, size), fromIterator(iterator));
+    });
+  }
+
+  /**
+   * Create a stream that pulls the elements from a given spliterator in chunks as the stream is
+   * consumed. Like {@link #fromIterator(Iterator)}, such stream can only be consumed once.
+   */
+  public static <T> Stream<T> fromSpliterator(Spliterator<T> spliterator) {
+    return Lazy(() -> {
+      final List<T> values = new ArrayList<>();
+      boolean more = true;
+      while (more && values.size() < Chunk.DEFAULT_SIZE) {
+        more = spliterator.tryAdvance(values::add);
+      }
+      return values.isEmpty()
+             ? Nil()
+             : ChunkCons(Chunk.ofAll(values), fromSpliterator(spliterator));
+    });
+  }
+
+  private static <T> Stream<T> fromIndexed(List<T> list, int from) {
+    return Lazy(() -> {
+      final int until = Math.min(list.size(), from + Chunk.DEFAULT_SIZE);
+      return from >= until ? Nil() : ChunkCons(Chunk.ofAll(list.subList(from, until)),
+                                                fromIndexed(list, until));
+    });
+  }
+
+  /**
+   * Create a stream that consists of the elements of given chunks.
+   */
+  public static <T> Stream<T> fromChunks(Stream<Chunk<T>> chunks) {
+    return Defer(chunks.split().map(opt -> opt
+        .map(ht -> ChunkCons(ht._1, fromChunks(ht._2)))
+        .orElseGet(Stream::Nil)));
+  }
+
+  /**
+   * Stream of primitive ints from {@code from} (inclusive) to {@code until} (exclusive).
+   */
+  public static IntStream ints(int from, int until) {
+    return IntStream.range(from, until);
+  }
+
+  /**
+   * Stream of primitive longs from {@code from} (inclusive) to {@code until} (exclusive).
+   */
+  public static LongStream longs(long from, long until) {
+    return LongStream.range(from, until);
+  }
+
+  /**
+   * Stream of given primitive doubles.
+   */
+  public static DoubleStream doubles(double... values) {
+    return DoubleStream.of(values);
+  }
+
+  /**
+   * Infinite stream of the values taken from the queue. Every time the stream needs a value, it
+   * waits for one, and then also takes the values that are available without waiting, up to a
+   * chunk. The values that have been taken are removed from the queue even if the stream is not
+   * consumed to the end of the chunk (e.g. because of {@code take}), so
+   * {@code Stream.eval(queue.take()).repeat()} is better suited for taking an exact number of
+   * values.
+   */
+  public static <T> Stream<T> fromQueue(Queue<T> queue) {
+    return Defer(queue.take().map(first -> ChunkCons(queue.takeAvailable(first, Chunk.DEFAULT_SIZE),
+                                                     fromQueue(queue))));
   }
 
   public static Stream<Unit> tick(ScheduledExecutorService scheduler, long millis) {
+    return tick(Scheduler.of(scheduler), millis);
+  }
+
+  /**
+   * Stream that emits a unit value every {@code millis} milliseconds, using the given
+   * {@link Scheduler}.
+   */
+  public static Stream<Unit> tick(Scheduler scheduler, long millis) {
     return Stream.eval(IO.sleep(scheduler, millis)).repeat();
   }
 
+  /**
+   * Stream that emits a unit value every {@code millis} milliseconds at a fixed rate: unlike
+   * {@link #tick(Scheduler, long)}, the time spent processing the elements does not delay
+   * the following ticks. Ticks that have been missed while processing are handled according to
+   * {@code missed}.
+   */
+  public static Stream<Unit> tickAtFixedRate(Scheduler scheduler, long millis,
+                                             MissedTicks missed) {
+    return Ticker.stream(scheduler, millis, missed);
+  }
+
+  /**
+   * Same as {@link #tickAtFixedRate(Scheduler, long, MissedTicks)} with
+   * {@link MissedTicks#SKIP} mode.
+   */
+  public static Stream<Unit> tickAtFixedRate(Scheduler scheduler, long millis) {
+    return tickAtFixedRate(scheduler, millis, MissedTicks.SKIP);
+  }
+
   /**
    * General stream building function.
    *
@@ -132,8 +292,13 @@ public abstract class Stream<T> {
     return unfold(Unit.unit, u -> more.ap().map(next -> Pr(next, Unit.unit)));
   }
 
+  /**
+   * Stream of all non-negative ints, up to and including {@link Integer#MAX_VALUE}. It is
+   * produced in chunks by {@link IntStream}, so that there is no per-element stream structure to
+   * build.
+   */
   public static Stream<Integer> integers() {
-    return unfold(0, prev -> Optional.of(Pr(prev, prev + 1)));
+    return IntStream.rangeClosed(0, Integer.MAX_VALUE).boxed();
   }
 
   private static <T, M> Stream<T> fromList(List<M> list, Function<M, IO<T>> f) {
@@ -144,29 +309,24 @@ public abstract class Stream<T> {
     return s;
   }
 
-  private static <T, M> Stream<T> fromIterable(Iterable<M> iterable, Function<M, IO<T>> f) {
-    return fromIterator(iterable.iterator(), f).run();
-  }
-
-  private static <T, M> IO<Stream<T>> fromIterator(Iterator<M> iterator, Function<M, IO<T>> f) {
-    return suspend(() -> {
-
-      if (!iterator.hasNext()) {
-        return pure(Nil());
-      }
-      final M next = iterator.next();
-      return fromIterator(iterator, f).map(s -> SCons(f.apply(next), s));
-    });
-  }
-
   // Unfold that eagerly evaluates the first step:
   private static <T, S> Stream<T> unfoldEager(S z, Xn<S, Optional<Pr<T, S>>> f) throws Throwable {
     return f.ap(z)
-        .map(p -> SCons(pure(p._1), Lazy((() -> unfoldEager(p._2, f)))))
+        .map(p -> Cons(p._1, Lazy((() -> unfoldEager(p._2, f)))))
         .orElseGet(Stream::Nil);
   }
 
-  public abstract <R> IO<R> foldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f);
+  /*
+   * Terminal operations run in their own Scope, so that everything the stream has started is
+   * stopped when the operation is over, even if it hasn't reached the end of the stream. Stream
+   * nodes implement the unscoped do* versions of them.
+   */
+
+  public <R> IO<R> foldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f) {
+    return Scope.scoped(doFoldRight(z, f));
+  }
+
+  abstract <R> IO<R> doFoldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f);
 
   public <R> IO<R> foldRight(R z, Fn2<T, R, R> f) {
     return foldRight(pure(z), (t, ior) -> ior.map(r -> f.ap(t, r)));
@@ -175,16 +335,35 @@ public abstract class Stream<T> {
   /**
    * Similar to foldRight, but does not evaluate elements
    */
-  public abstract <R> IO<R> collectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f);
+  public <R> IO<R> collectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f) {
+    return Scope.scoped(doCollectRight(z, f));
+  }
 
-  public abstract <R> IO<R> foldLeft(R z, Fn2<R, T, R> f);
+  abstract <R> IO<R> doCollectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f);
+
+  /**
+   * Fold the stream from left to right. The stream is walked in a loop, and IO is only involved
+   * where elements or stream structure actually need to be evaluated, so the cost per element
+   * doesn't depend on how the stream has been built.
+   */
+  public <R> IO<R> foldLeft(R z, Fn2<R, T, R> f) {
+    return Scope.scoped(doFoldLeft(z, f));
+  }
+
+  <R> IO<R> doFoldLeft(R z, Fn2<R, T, R> f) {
+    return pull().flatMap(pull -> pull.fold(z, f));
+  }
 
   public abstract <R> Stream<R> scanLeft(R z, Fn2<R, T, R> f);
 
   /**
    * Similar to foldLeft, but does not evaluate elements
    */
-  public abstract <R> IO<R> collectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f);
+  public <R> IO<R> collectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f) {
+    return Scope.scoped(doCollectLeft(z, f));
+  }
+
+  abstract <R> IO<R> doCollectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f);
 
   public Stream<T> append(Stream<T> other) {
     if (other instanceof Nil) {
@@ -195,7 +374,7 @@ public abstract class Stream<T> {
       return other;
     }
 
-    return Defer(collectRight(pure(other), (elem, acc) -> pure(SCons(elem, Defer(acc)))));
+    return new Append<>(this, other);
   }
 
   public abstract Stream<T> take(int n);
@@ -210,7 +389,9 @@ public abstract class Stream<T> {
     return drop(1);
   }
 
-  public abstract Stream<T> takeWhile(Fn<T, Boolean> p, boolean includeFailure);
+  public Stream<T> takeWhile(Fn<T, Boolean> p, boolean includeFailure) {
+    return new Fused<>(this, Fused.takingWhile(p, includeFailure), false);
+  }
 
   public Stream<T> takeWhile(Fn<T, Boolean> p) {
     return takeWhile(p, false);
@@ -220,10 +401,48 @@ public abstract class Stream<T> {
 
   public abstract <U> Stream<U> flatMap(Fn<T, Stream<U>> f);
 
-  public abstract <U> Stream<U> map(Fn<T, U> f);
+  public <U> Stream<U> map(Fn<T, U> f) {
+    return new Fused<>(this, Fused.mapping(f), true);
+  }
 
   public abstract <U> Stream<U> mapEval(Fn<T, IO<U>> f);
 
+  /**
+   * View of this stream as a stream of chunks. Chunks of the stream are preserved, and every
+   * element that is not a part of a chunk becomes a single-element chunk.
+   */
+  public abstract Stream<Chunk<T>> chunks();
+
+  public IntStream mapToInt(ToIntFunction<T> f) {
+    return new IntStream(chunks().map(chunk -> {
+      final int[] result = new int[chunk.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = f.applyAsInt(chunk.get(i));
+      }
+      return result;
+    }));
+  }
+
+  public LongStream mapToLong(ToLongFunction<T> f) {
+    return new LongStream(chunks().map(chunk -> {
+      final long[] result = new long[chunk.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = f.applyAsLong(chunk.get(i));
+      }
+      return result;
+    }));
+  }
+
+  public DoubleStream mapToDouble(ToDoubleFunction<T> f) {
+    return new DoubleStream(chunks().map(chunk -> {
+      final double[] result = new double[chunk.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = f.applyAsDouble(chunk.get(i));
+      }
+      return result;
+    }));
+  }
+
   abstract IO<Optional<Cons<T>>> extract();
 
   /**
@@ -237,11 +456,43 @@ public abstract class Stream<T> {
         );
   }
 
+  /**
+   * Create a cursor over this stream. See {@link Pull}.
+   */
+  public IO<Pull<T>> pull() {
+    return IO(() -> new Pull<>(this));
+  }
+
+  /**
+   * Attach a custom stage to this stream. The stage receives a fresh cursor every time the
+   * resulting stream is evaluated:
+   *
+   * {@code
+   * // pairs of consecutive elements:
+   * static <T> Stream<Pr<T, T>> pairs(Pull<T> pull) {
+   *   return Stream.Defer(pull.hasNext().flatMap(has1 -> {
+   *     if (!has1) return IO.pure(Stream.Nil());
+   *     final T first = pull.next();
+   *     return pull.hasNext().map(has2 -> has2
+   *                                       ? Stream.Cons(Pr.of(first, pull.next()), pairs(pull))
+   *                                       : Stream.Nil());
+   *   }));
+   * }
+   *
+   * stream.through(Stages::pairs)
+   * }
+   */
+  public <U> Stream<U> through(Fn<Pull<T>, Stream<U>> stage) {
+    return Defer(pull().map(stage));
+  }
+
   public <U> Stream<U> chain(IO<U> f) {
     return mapEval(any -> f);
   }
 
-  public abstract Stream<T> filter(Fn<T, Boolean> p);
+  public Stream<T> filter(Fn<T, Boolean> p) {
+    return new Fused<>(this, Fused.filtering(p), false);
+  }
 
   public IO<Boolean> exists(Fn<T, Boolean> p) {
     return foldRight(pure(false), (elem, searchMore) -> p.ap(elem) ? pure(true) : searchMore);
@@ -252,7 +503,7 @@ public abstract class Stream<T> {
   }
 
   public Stream<T> reverse() {
-    return Defer(collectLeft(pure(Nil()), (acc, elem) -> pure(SCons(elem, Defer(acc)))));
+    return Defer(doCollectLeft(pure(Nil()), (acc, elem) -> pure(SCons(elem, Defer(acc)))));
   }
 
   public Stream<T> repeat() {
@@ -264,7 +515,7 @@ public abstract class Stream<T> {
    * the stream actually has a head (is not empty) without really evaluating head's value:
    * {@code
    * final Stream<T> stream = ...
-   * final IO<Boolean> isNotEmpty = stream.lazyHead().map(Optional::isPresent)
+   * final IO<Boolean> isNotEmpty = stream.doLazyHead().map(Optional::isPresent)
    * }.
    *
    * This method can be implemented in terms of {@code collectRight}:
@@ -272,9 +523,17 @@ public abstract class Stream<T> {
    * collectRight(pure(Optional.empty()), (head, ignore) -> pure(Optional.of(head)));
    * }
    */
-  public abstract IO<Optional<IO<T>>> lazyHead();
+  public IO<Optional<IO<T>>> lazyHead() {
+    return Scope.scoped(doLazyHead());
+  }
+
+  abstract IO<Optional<IO<T>>> doLazyHead();
 
-  public abstract IO<Optional<T>> headOption();
+  public IO<Optional<T>> headOption() {
+    return Scope.scoped(doHeadOption());
+  }
+
+  abstract IO<Optional<T>> doHeadOption();
 
   /**
    * Run all the effects in the stream!
@@ -283,16 +542,44 @@ public abstract class Stream<T> {
     return foldLeft(Unit.unit, (u, any) -> u);
   }
 
+  /**
+   * Offer all the elements of the stream to the queue, one by one. If the queue is bounded, the
+   * stream is only pulled as fast as the values are taken from the queue.
+   */
+  public IO<Unit> toQueue(Queue<T> queue) {
+    return Scope.scoped(pull().flatMap(pull -> toQueue(pull, queue)));
+  }
+
+  private static <T> IO<Unit> toQueue(Pull<T> pull, Queue<T> queue) {
+    return pull.hasNext().flatMap(has -> {
+      if (!has) {
+        return IO.unit;
+      }
+      return queue.offer(pull.next()).flatMap(u -> toQueue(pull, queue));
+    });
+  }
+
   public static <T, U, V> Stream<V> zipWith(Stream<T> stream1, Stream<U> stream2,
                                             Fn2<T, U, V> combine) {
 
-    return Defer(
-        IOFunctions.map2(stream1.extract(), stream2.extract(), (cons1, cons2) ->
-            IOFunctions.map2Opt(cons1, cons2, (c1, c2) -> SCons(
-                IOFunctions.map2(c1.head, c2.head, combine),
-                zipWith(c1.tail, c2.tail, combine)
-            )).orElseGet(Stream::Nil)
-        ));
+    return Defer(IOFunctions.map2(stream1.pull(), stream2.pull(),
+                                  (pull1, pull2) -> zipWith(pull1, pull2, combine)));
+  }
+
+  private static <T, U, V> Stream<V> zipWith(Pull<T> pull1, Pull<U> pull2,
+                                             Fn2<T, U, V> combine) {
+    return Defer(IOFunctions.map2(pull1.hasNext(), pull2.hasNext(), (has1, has2) -> {
+      if (!has1 || !has2) {
+        return Nil();
+      }
+
+      // zip as many values as both cursors have buffered:
+      final Object[] zipped = new Object[Math.min(pull1.buffered(), pull2.buffered())];
+      for (int i = 0; i < zipped.length; i++) {
+        zipped[i] = combine.ap(pull1.next(), pull2.next());
+      }
+      return ChunkCons(Chunk.wrap(zipped, 0, zipped.length), zipWith(pull1, pull2, combine));
+    }));
   }
 
   public Stream<Pr<T, Integer>> zipWithIndex() {
@@ -303,10 +590,18 @@ public abstract class Stream<T> {
     return zipWith(stream1, stream2, Pr::of);
   }
 
+  /**
+   * Merge this stream with {@code other}, see {@link #merge(Executor, Stream, Stream)}.
+   */
   public Stream<T> merge(Executor executor, Stream<T> other) {
     return merge(executor, this, other);
   }
 
+  /**
+   * Merge two streams, emitting the elements of each of them as soon as they are available. The
+   * streams are pulled by their own fibers, that read up to 16 chunks ahead of the consumer (see
+   * {@link #mergeAll(Executor, Stream[])}).
+   */
   public static <T> Stream<T> merge(Executor executor, Stream<T> stream1, Stream<T> stream2) {
 
     if (stream1 instanceof Nil) {
@@ -317,314 +612,90 @@ public abstract class Stream<T> {
       return stream1;
     }
 
-    return Defer(
-        IO.pair(executor, stream1.split(), stream2.split())
-            .map(seq -> {
-              final Stream<T> str2 = Defer(seq._2.map(opt -> opt.map(ht -> Cons(ht._1, ht._2)).orElse(Nil())));
-
-              return seq._1
-                  .map(ht -> Cons(ht._1, merge(executor, ht._2, str2)))
-                  .orElse(str2);
-            })
-    );
+    return mergeAll(executor, stream1, stream2);
   }
 
-  IO<LList<T>> toLList() {
-    return foldRight(LNil.instance(), (el, l) -> l.prepend(el));
+  /**
+   * Merge the streams, emitting the elements of each of them as soon as they are available.
+   * Every stream is evaluated by its own fiber on the {@code executor}.
+   *
+   * The fibers read ahead: they pull up to 16 chunks of the streams before the consumer asks for
+   * them. The fibers are cancelled when the operation that consumes the resulting stream (a fold,
+   * {@link #headOption}, etc.) is over, even if it hasn't reached the end of the stream.
+   */
+  @SafeVarargs
+  public static <T> Stream<T> mergeAll(Executor executor, Stream<T>... streams) {
+    return mergeAll(executor, Arrays.asList(streams));
   }
 
-  <U> Stream<U> lazyTransform(Function<Stream<T>, Stream<U>> conv) {
-    if (this instanceof Cons) {
-      return Lazy(() -> conv.apply(this));
-    }
-
-    return conv.apply(this);
+  public static <T> Stream<T> mergeAll(Executor executor, Iterable<Stream<T>> streams) {
+    return parJoin(executor, Integer.MAX_VALUE, ofAll(streams));
   }
-}
-
-@RequiredArgsConstructor
-class Cons<T> extends Stream<T> {
-
-  final IO<T> head;
-  final Stream<T> tail;
 
-  @Override
-  public <R> IO<R> foldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f) {
-    return head.flatMap(h -> f.ap(h, tail.foldRight(z, f)));
+  /**
+   * Flatten the stream of streams, evaluating up to {@code maxOpen} inner streams at the same
+   * time, each by its own fiber on the {@code executor}. The elements are emitted as soon as they
+   * are available, a chunk at a time, so the order of the elements of each inner stream is
+   * preserved, but they are interleaved with the others.
+   *
+   * The fibers put the chunks into a shared queue of 16 chunks, and wait when it's full, so a
+   * slow consumer slows the inner streams down, but the streams are read that far ahead of it.
+   * The first failure cancels all the fibers and fails the resulting stream. The fibers are
+   * cancelled as well when the operation that consumes the resulting stream is over.
+   */
+  public static <T> Stream<T> parJoin(Executor executor, int maxOpen, Stream<Stream<T>> streams) {
+    return ParJoin.parJoin(executor, maxOpen, streams);
   }
 
-  @Override
-  public <R> IO<R> collectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f) {
-    return suspend(() -> f.ap(head, tail.collectRight(z, f)));
+  /**
+   * Map every element with an effectful function, running up to {@code maxConcurrent}
+   * evaluations at the same time on the {@code executor}. The results are emitted in the order
+   * of the elements: a result that is ready early waits until all the results before it are
+   * ready, and it still occupies one of the {@code maxConcurrent} slots.
+   *
+   * The first failure cancels all the running evaluations and fails the stream. They are
+   * cancelled as well when the operation that consumes the stream is over, even if it hasn't
+   * reached the end of the stream (e.g. because of {@code take}).
+   */
+  public <U> Stream<U> parEvalMap(Executor executor, int maxConcurrent, Fn<T, IO<U>> f) {
+    return ParEvalMap.parEvalMap(this, executor, maxConcurrent, f, true);
   }
 
-  @Override
-  public <R> IO<R> foldLeft(R z, Fn2<R, T, R> f) {
-    return head.flatMap(h -> tail.foldLeft(f.ap(z, h), f));
+  /**
+   * Same as {@link #parEvalMap(Executor, int, Fn)}, but the results are emitted as soon as
+   * they are ready, in the order of completion.
+   */
+  public <U> Stream<U> parEvalMapUnordered(Executor executor, int maxConcurrent,
+                                           Fn<T, IO<U>> f) {
+    return ParEvalMap.parEvalMap(this, executor, maxConcurrent, f, false);
   }
 
-  @Override
-  public <R> Stream<R> scanLeft(R z, Fn2<R, T, R> f) {
-    return Defer(head.map(h -> {
-      final R r = f.ap(z, h);
-
-      return Cons(r, tail.scanLeft(r, f));
+  /**
+   * Collect all the elements of the stream into a list.
+   */
+  public IO<List<T>> toList() {
+    return suspend(() -> foldLeft(new ArrayList<T>(), (list, elem) -> {
+      list.add(elem);
+      return list;
     }));
   }
 
-  @Override
-  public <R> IO<R> collectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f) {
-    return tail.collectLeft(suspend(() -> f.ap(z, head)), f);
-  }
-
-  @Override
-  public Stream<T> filter(Fn<T, Boolean> p) {
-    return Defer(head.map(h -> p.ap(h) ? Cons(h, tail.filter(p)) : tail.filter(p)));
-  }
-
-  @Override
-  public Stream<T> take(int n) {
-    return n == 0 ? Nil() : SCons(head, tail.lazyTransform(s -> s.take(n - 1)));
-  }
-
-  @Override
-  public Stream<T> drop(int n) {
-    return n == 0 ? this : tail.lazyTransform(s -> s.drop(n - 1));
-  }
-
-  @Override
-  public Stream<T> takeWhile(Fn<T, Boolean> p, boolean includeFailure) {
-    return Defer(head.map(h -> p.ap(h) ? Cons(h, tail.takeWhile(p))
-                                       : includeFailure ? Cons(h, Nil())
-                                                        : Nil()
-    ));
-  }
-
-  @Override
-  public Stream<T> dropWhile(Fn<T, Boolean> p) {
-    return Defer(head.map(h -> p.ap(h) ? tail.dropWhile(p) : this));
-  }
-
-  @Override
-  public <U> Stream<U> flatMap(Fn<T, Stream<U>> f) {
-    return Defer(head.map(h -> f.ap(h).append(tail.flatMap(f))));
-  }
-
-  @Override
-  public <U> Stream<U> map(Fn<T, U> f) {
-    return SCons(head.map(f), tail.lazyTransform(s -> s.map(f)));
-  }
-
-  @Override
-  public <U> Stream<U> mapEval(Fn<T, IO<U>> f) {
-    return SCons(head.flatMap(f), tail.lazyTransform(s -> s.mapEval(f)));
-  }
-
-  @Override
-  public IO<Optional<IO<T>>> lazyHead() {
-    return pure(Optional.of(head));
-  }
-
-  @Override
-  public IO<Optional<T>> headOption() {
-    return head.map(Optional::of);
-  }
-
-  @Override
-  IO<Optional<Cons<T>>> extract() {
-    return pure(Optional.of(this));
-  }
-
-
-  @Override
-  public String toString() {
-    return "Cons(" + head + "," + tail + ")";
-  }
-}
-
-@RequiredArgsConstructor
-class Defer<T> extends Stream<T> {
-
-  final IO<Stream<T>> evalStream;
-
-  @Override
-  public <R> IO<R> foldRight(IO<R> z, Fn2<T, IO<R>, IO<R>> f) {
-    return evalStream.flatMap(s -> s.foldRight(z, f));
-  }
-
-  @Override
-  public <R> IO<R> collectRight(IO<R> z, Fn2<IO<T>, IO<R>, IO<R>> f) {
-    return evalStream.flatMap(s -> s.collectRight(z, f));
-  }
-
-  @Override
-  public <R> IO<R> foldLeft(R z, Fn2<R, T, R> f) {
-    return evalStream.flatMap(s -> s.foldLeft(z, f));
-  }
-
-  @Override
-  public <R> Stream<R> scanLeft(R z, Fn2<R, T, R> f) {
-    return Defer(evalStream.map(s -> s.scanLeft(z, f)));
-  }
-
-  @Override
-  public <R> IO<R> collectLeft(IO<R> z, Fn2<IO<R>, IO<T>, IO<R>> f) {
-    return evalStream.flatMap(s -> s.collectLeft(z, f));
-  }
-
-  @Override
-  public Stream<T> take(int n) {
-    return Defer(evalStream.map(s -> s.take(n)));
-  }
-
-  @Override
-  public Stream<T> drop(int n) {
-    return Defer(evalStream.map(s -> s.drop(n)));
-  }
-
-  @Override
-  public Stream<T> takeWhile(Fn<T, Boolean> p, boolean includeFailure) {
-    return Defer(evalStream.map(s -> s.takeWhile(p, includeFailure)));
-  }
-
-  @Override
-  public Stream<T> dropWhile(Fn<T, Boolean> p) {
-    return Defer(evalStream.map(s -> s.dropWhile(p)));
-  }
-
-  @Override
-  public <U> Stream<U> flatMap(Fn<T, Stream<U>> f) {
-    return Defer(evalStream.map(s -> s.flatMap(f)));
-  }
-
-  @Override
-  public <U> Stream<U> map(Fn<T, U> f) {
-    return Defer(evalStream.map(s -> s.map(f)));
-  }
-
-  @Override
-  public <U> Stream<U> mapEval(Fn<T, IO<U>> f) {
-    return Defer(evalStream.map(s -> s.mapEval(f)));
-  }
-
-  @Override
-  public Stream<T> filter(Fn<T, Boolean> p) {
-    return Defer(evalStream.map(s -> s.filter(p)));
-  }
-
-  @Override
-  public IO<Optional<IO<T>>> lazyHead() {
-    return evalStream.flatMap(Stream::lazyHead);
-  }
-
-  @Override
-  public IO<Optional<T>> headOption() {
-    return evalStream.flatMap(Stream::headOption);
-  }
-
-  @Override
-  IO<Optional<Cons<T>>> extract() {
-    return evalStream.flatMap(Stream::extract);
-  }
-
-  @Override
-  public String toString() {
-    return "Defer(" + evalStream + ")";
-  }
-}
-
-@NoArgsConstructor(access = AccessLevel.PRIVATE)
-class Nil extends Stream<Object> {
-
-  private static final Nil INSTANCE = new Nil();
-
-  @SuppressWarnings("unchecked")
-  static <T> Stream<T> instance() {
-    return (Stream<T>) INSTANCE;
-  }
-
-  @Override
-  public <R> IO<R> foldRight(IO<R> z, Fn2<Object, IO<R>, IO<R>> f) {
-    return z;
-  }
-
-  @Override
-  public <R> IO<R> collectLeft(IO<R> z, Fn2<IO<R>, IO<Object>, IO<R>> f) {
-    return z;
-  }
-
-  @Override
-  public <R> IO<R> collectRight(IO<R> z, Fn2<IO<Object>, IO<R>, IO<R>> f) {
-    return z;
-  }
-
-  @Override
-  public <R> IO<R> foldLeft(R z, Fn2<R, Object, R> f) {
-    return pure(z);
-  }
-
-  @Override
-  public <R> Stream<R> scanLeft(R z, Fn2<R, Object, R> f) {
-    return instance();
-  }
-
-  @Override
-  public Stream<Object> take(int n) {
-    return instance();
-  }
-
-  @Override
-  public Stream<Object> drop(int n) {
-    return instance();
-  }
-
-  @Override
-  public Stream<Object> takeWhile(Fn<Object, Boolean> p, boolean includeFailure) {
-    return instance();
-  }
-
-  @Override
-  public Stream<Object> dropWhile(Fn<Object, Boolean> p) {
-    return instance();
-  }
-
-  @Override
-  public <U> Stream<U> flatMap(Fn<Object, Stream<U>> f) {
-    return instance();
-  }
-
-  @Override
-  public <U> Stream<U> map(Fn<Object, U> f) {
-    return instance();
-  }
-
-  @Override
-  public <U> Stream<U> mapEval(Fn<Object, IO<U>> f) {
-    return instance();
-  }
-
-  @Override
-  public Stream<Object> filter(Fn<Object, Boolean> p) {
-    return instance();
-  }
-
-  @Override
-  public IO<Optional<IO<Object>>> lazyHead() {
-    return pure(Optional.empty());
-  }
-
-  @Override
-  public IO<Optional<Object>> headOption() {
-    return pure(Optional.empty());
+  IO<LList<T>> toLList() {
+    return toList().map(list -> {
+      LList<T> result = LNil.instance();
+      for (int i = list.size() - 1; i >= 0; i--) {
+        result = result.prepend(list.get(i));
+      }
+      return result;
+    });
   }
 
-  @Override
-  IO<Optional<Cons<Object>>> extract() {
-    return pure(Optional.empty());
-  }
+  <U> Stream<U> lazyTransform(Function<Stream<T>, Stream<U>> conv) {
+    if (this instanceof Cons || this instanceof PureCons || this instanceof ChunkCons
+        || this instanceof Append) {
+      return Lazy(() -> conv.apply(this));
+    }
 
-  @Override
-  public String toString() {
-    return "Nil";
+    return conv.apply(this);
   }
 }
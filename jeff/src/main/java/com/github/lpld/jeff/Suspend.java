@@ -0,0 +1,22 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.functions.Xn0;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * IO node that lazily produces the IO to continue with.
+ *
+ * @author leopold
+ * @since 4/10/18
+ */
+@RequiredArgsConstructor
+class Suspend<T> extends IO<T> {
+
+  final Xn0<IO<T>> resume;
+
+  @Override
+  public String toString() {
+    return "suspend(.)";
+  }
+}
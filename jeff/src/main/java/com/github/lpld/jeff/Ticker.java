@@ -0,0 +1,180 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Unit;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of {@link Stream#tickAtFixedRate} stream.
+ *
+ * Ticks are produced by a single periodic timer registration, that is made when the stream is
+ * pulled for the first time. Ticks that happen while nobody is waiting are counted according
+ * to {@link MissedTicks} mode.
+ *
+ * Unless in {@link MissedTicks#BURST} mode, the ticker doesn't trust the timer to drop missed
+ * executions: a periodic timer may run them in quick succession once it has the chance (for
+ * instance, when the consumer has been blocking the timer thread). Instead, every tick is
+ * mapped to a time slot since the start of the schedule, and only one tick per slot is
+ * accepted.
+ *
+ * The timer is owned by the {@link Scope} of the operation that consumes the stream: when that
+ * operation is over (e.g. after {@code take(n)}), the timer is cancelled, and it is restarted
+ * if the stream is pulled again. A stream that is pulled outside of any scope may be abandoned
+ * without telling the ticker, so as a backstop, the timer only holds a weak reference to the
+ * ticker while the consumer is busy: once the stream is garbage, the timer cancels itself.
+ * While the consumer is waiting for a tick, the reference is strong, because the waiting run
+ * loop may be reachable only through the ticker.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+final class Ticker {
+
+  private final Scheduler scheduler;
+  private final Clock clock;
+  private final long period;
+  private final long periodNanos;
+  private final MissedTicks missed;
+  private final IO<Unit> next = new Async<>(this::await);
+  private final Runnable stop = this::stop;
+
+  // guarded by this:
+  private Tick tick;
+  private long start;
+  private long lastSlot;
+  private int pending = 0;
+  private Callback<Unit> waiting;
+
+  private Ticker(Scheduler scheduler, long period, MissedTicks missed) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("period must be positive: " + period);
+    }
+    this.scheduler = scheduler;
+    this.clock = scheduler.clock();
+    this.period = period;
+    this.periodNanos = TimeUnit.MILLISECONDS.toNanos(period);
+    this.missed = missed;
+  }
+
+  static Stream<Unit> stream(Scheduler scheduler, long period, MissedTicks missed) {
+    return Stream.Lazy(() -> new Ticker(scheduler, period, missed).stream());
+  }
+
+  private Stream<Unit> stream() {
+    return Stream.SCons(next, Stream.Lazy(this::stream));
+  }
+
+  private IO<?> await(AsyncCallback<Unit> cb) {
+    synchronized (this) {
+      if (tick == null) {
+        // the first pull, or the first one after the consuming operation is over:
+        cb.scope().register(stop);
+        restart();
+      }
+
+      if (pending == 0) {
+        waiting = cb;
+        tick.strong = this;
+        return IO.delay(() -> cancelWaiting(cb));
+      }
+
+      pending--;
+      if (missed == MissedTicks.DELAY && (clock.nanoTime() - start) / periodNanos > lastSlot) {
+        // the consumer is late by more than a period: shift the schedule
+        restart();
+      }
+    }
+
+    cb.success(Unit.unit);
+    return IO.unit;
+  }
+
+  private void restart() {
+    if (tick != null && tick.registration != null) {
+      tick.registration.cancel();
+    }
+    start = clock.nanoTime();
+    lastSlot = 0;
+    tick = new Tick(this);
+    tick.registration = scheduler.scheduleAtFixedRate(period, period, tick);
+  }
+
+  private synchronized void cancelWaiting(Callback<Unit> cb) {
+    if (waiting == cb) {
+      waiting = null;
+      tick.strong = null;
+    }
+  }
+
+  private synchronized void stop() {
+    if (tick != null) {
+      if (tick.registration != null) {
+        tick.registration.cancel();
+      }
+      tick.strong = null;
+      tick = null;
+    }
+    waiting = null;
+    pending = 0;
+  }
+
+  private void fire(Tick source) {
+    final Callback<Unit> cb;
+
+    synchronized (this) {
+      if (source != tick) {
+        // registration that has been replaced by DELAY mode
+        return;
+      }
+
+      final long slot = (clock.nanoTime() - start) / periodNanos;
+      if (missed != MissedTicks.BURST && slot <= lastSlot) {
+        // a stale execution that the timer is catching up with
+        return;
+      }
+      final boolean late = slot > lastSlot + 1;
+      lastSlot = slot;
+
+      if (waiting == null) {
+        pending = missed == MissedTicks.BURST ? pending + 1 : 1;
+        return;
+      }
+      cb = waiting;
+      waiting = null;
+      tick.strong = null;
+
+      if (late && missed == MissedTicks.DELAY) {
+        restart();
+      }
+    }
+
+    cb.success(Unit.unit);
+  }
+
+  /**
+   * Periodic timer task.
+   */
+  private static final class Tick implements Runnable {
+
+    private final WeakReference<Ticker> weak;
+    private volatile Ticker strong;
+    private volatile Scheduler.Task registration;
+
+    Tick(Ticker ticker) {
+      this.weak = new WeakReference<>(ticker);
+    }
+
+    @Override
+    public void run() {
+      final Ticker ticker = weak.get();
+
+      if (ticker != null) {
+        ticker.fire(this);
+      } else if (registration != null) {
+        // the stream has been abandoned
+        registration.cancel();
+      }
+    }
+  }
+}
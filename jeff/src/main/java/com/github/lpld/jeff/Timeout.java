@@ -0,0 +1,93 @@
+package com.github.lpld.jeff;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static com.github.lpld.jeff.functions.Fn.id;
+
+/**
+ * State of a single {@link IO#timeoutTo} evaluation.
+ *
+ * The target IO is run in place (not forked) with this object as its cancellation token, and
+ * a timer is armed next to it. Whichever finishes first claims the result: if the target
+ * completes, the timer is cancelled; if the timer fires, the target is cancelled and the
+ * evaluation continues with the fallback IO.
+ *
+ * The target inherits the executor of the enclosing loop, so it cedes to the same executor as
+ * the code around it, and its scope, so that the resources it opens are owned by the enclosing
+ * stream operation. The fallback is shifted back to that executor as well, instead of running
+ * on the timer thread.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+final class Timeout<T> extends CancellableIOTask implements Callback<T>, Runnable {
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicIntegerFieldUpdater<Timeout> CLAIMED =
+      AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "claimed");
+
+  private final Callback<IO<T>> callback;
+  private final IO<T> fallback;
+  private final Executor executor;
+  private volatile Scheduler.Task timer;
+  private volatile int claimed = 0;
+
+  private Timeout(Callback<IO<T>> callback, IO<T> fallback, Executor executor) {
+    this.callback = callback;
+    this.fallback = fallback;
+    this.executor = executor;
+  }
+
+  static <T> IO<T> timeoutTo(IO<T> io, Scheduler scheduler, long millis, IO<T> fallback) {
+    return new Async<IO<T>>(cb -> {
+      final Timeout<T> timeout = new Timeout<>(cb, fallback, cb.executor());
+      timeout.timer = scheduler.schedule(millis, timeout);
+      IORun.runAsync(io, timeout, timeout, timeout.executor, cb.scope());
+
+      return IO.delay(timeout::cancelAll);
+    }).flatMap(id());
+  }
+
+  static <T> IO<T> timeout(IO<T> io, Scheduler scheduler, long millis) {
+    return timeoutTo(io, scheduler, millis, IO.fail(
+        () -> new TimeoutException("IO has not completed in " + millis + " ms")));
+  }
+
+  private boolean claim() {
+    return CLAIMED.compareAndSet(this, 0, 1);
+  }
+
+  private void cancelAll() {
+    timer.cancel();
+    cancel();
+  }
+
+  @Override
+  public void success(T value) {
+    if (claim()) {
+      timer.cancel();
+      callback.success(IO.pure(value));
+    }
+  }
+
+  @Override
+  public void failure(Throwable err) {
+    if (claim()) {
+      timer.cancel();
+      callback.failure(err);
+    }
+  }
+
+  /**
+   * The timer has fired.
+   */
+  @Override
+  public void run() {
+    if (claim()) {
+      cancel();
+      callback.success(executor == null ? fallback : IO.forked(executor).chain(fallback));
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.github.lpld.jeff;
+
+/**
+ * Cancellation token of a running IO that is never cancelled.
+ *
+ * @author leopold
+ * @since 20/10/18
+ */
+class UncancellableIOTask implements RunningIO {
+
+  public static final UncancellableIOTask INSTANCE = new UncancellableIOTask();
+
+  @Override
+  public boolean suspending() {
+    return true;
+  }
+
+  @Override
+  public boolean suspended(RunLoop runLoop, IO<?> cancelAction) {
+    return true;
+  }
+
+  @Override
+  public boolean resumed() {
+    return true;
+  }
+}
@@ -0,0 +1,188 @@
+package com.github.lpld.jeff;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Scheduler} and {@link Executor} that run in virtual time, for deterministic and
+ * instant tests and simulations of time-based code.
+ *
+ * Nothing happens by itself here: tasks and timers are only run by the thread that drives the
+ * scheduler with {@link #run(IO)}, {@link #runUntilIdle()} or {@link #advanceBy(long)}. Whenever
+ * there is no runnable task, the virtual clock jumps straight to the next timer, so
+ * {@code IO.sleep(scheduler, 3_600_000)} completes in no time:
+ *
+ * {@code
+ * final VirtualScheduler scheduler = new VirtualScheduler();
+ * final Integer ticks = scheduler.run(
+ *     Stream.tick(scheduler, 1000).take(3600).foldLeft(0, (n, t) -> n + 1)
+ * );
+ * }
+ *
+ * Tasks are run right on the driving thread, so if a task throws, the error is rethrown from the
+ * driving method. The tasks that haven't been run yet stay in the scheduler, and driving it
+ * again continues with them.
+ *
+ * The scheduler only knows about the work that is submitted to it. If an IO forks onto some
+ * other executor, the virtual time may run ahead while that work is in progress, so for
+ * deterministic results this scheduler should be used as the only executor as well.
+ *
+ * @author leopold
+ * @since 16/10/26
+ */
+public final class VirtualScheduler implements Scheduler, Clock, Executor {
+
+  private final Queue<Runnable> tasks = new ArrayDeque<>();
+  private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+  private long now = 0;
+  private long sequence = 0;
+
+  @Override
+  public synchronized long nanoTime() {
+    return now;
+  }
+
+  /**
+   * Current virtual time in milliseconds since the scheduler has been created.
+   */
+  public long currentTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(nanoTime());
+  }
+
+  @Override
+  public Clock clock() {
+    return this;
+  }
+
+  @Override
+  public synchronized void execute(Runnable task) {
+    tasks.add(task);
+    notifyAll();
+  }
+
+  @Override
+  public synchronized Task schedule(long millis, Runnable task) {
+    final Timer timer =
+        new Timer(now + TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0)), sequence++, task);
+    timers.add(timer);
+    notifyAll();
+    return timer;
+  }
+
+  /**
+   * Run all the tasks and all the timers that are due, without advancing the clock.
+   */
+  public void runUntilIdle() {
+    Runnable task;
+    while ((task = next(nanoTime())) != null) {
+      task.run();
+    }
+  }
+
+  /**
+   * Advance the clock by {@code millis} milliseconds, running all the tasks and all the timers
+   * that become due on the way.
+   */
+  public void advanceBy(long millis) {
+    final long target = nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    Runnable task;
+    while ((task = next(target)) != null) {
+      task.run();
+    }
+    synchronized (this) {
+      now = Math.max(now, target);
+    }
+  }
+
+  /**
+   * Run the IO on the current thread until it completes, advancing the virtual clock whenever
+   * there is nothing else to do. If there is neither a task nor a timer, but the IO is not
+   * completed, it is waiting for something outside of this scheduler, so the current thread
+   * blocks until new work arrives.
+   */
+  public <T> T run(IO<T> io) {
+    final CompletableFuture<T> result = IORun.runAsync(io, UncancellableIOTask.INSTANCE);
+    result.whenComplete((res, err) -> wakeUp());
+
+    while (!result.isDone()) {
+      final Runnable task = next(Long.MAX_VALUE);
+      if (task != null) {
+        task.run();
+      } else {
+        awaitWork(result);
+      }
+    }
+
+    try {
+      return result.join();
+    } catch (CompletionException e) {
+      return WrappedError.throwWrapped(e.getCause());
+    }
+  }
+
+  private synchronized void wakeUp() {
+    notifyAll();
+  }
+
+  private synchronized void awaitWork(CompletableFuture<?> result) {
+    try {
+      while (tasks.isEmpty() && timers.isEmpty() && !result.isDone()) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      WrappedError.throwWrapped(e);
+    }
+  }
+
+  /**
+   * Take the next task or, if there is none, the next timer, provided that it is due by
+   * {@code limit}, advancing the clock to its deadline. Returns {@code null} if there is nothing
+   * to run.
+   */
+  private synchronized Runnable next(long limit) {
+    if (!tasks.isEmpty()) {
+      return tasks.poll();
+    }
+
+    final Timer timer = timers.peek();
+    if (timer == null || timer.deadline > limit) {
+      return null;
+    }
+    timers.poll();
+    now = Math.max(now, timer.deadline);
+    return timer.task;
+  }
+
+  private final class Timer implements Task, Comparable<Timer> {
+
+    final long deadline;
+    final long seq;
+    final Runnable task;
+
+    Timer(long deadline, long seq, Runnable task) {
+      this.deadline = deadline;
+      this.seq = seq;
+      this.task = task;
+    }
+
+    @Override
+    public void cancel() {
+      synchronized (VirtualScheduler.this) {
+        timers.remove(this);
+      }
+    }
+
+    @Override
+    public int compareTo(Timer other) {
+      // timers with the same deadline are run in the order they were scheduled:
+      final int byDeadline = Long.compare(deadline, other.deadline);
+      return byDeadline != 0 ? byDeadline : Long.compare(seq, other.seq);
+    }
+  }
+}
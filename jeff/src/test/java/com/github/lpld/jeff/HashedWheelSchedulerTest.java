@@ -0,0 +1,140 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Unit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author leopold
+ * @since 16/10/26
+ */
+public class HashedWheelSchedulerTest {
+
+  private HashedWheelScheduler scheduler;
+
+  @Before
+  public void init() {
+    // small wheel, so that some of the timers take several revolutions:
+    scheduler = new HashedWheelScheduler(5, 8);
+  }
+
+  @After
+  public void cleanUp() {
+    scheduler.close();
+  }
+
+  @Test
+  public void order() throws InterruptedException {
+    final ConcurrentLinkedQueue<Integer> fired = new ConcurrentLinkedQueue<>();
+    final CountDownLatch latch = new CountDownLatch(10);
+
+    for (int i = 9; i >= 0; i--) {
+      final int n = i;
+      scheduler.schedule(n * 20, () -> {
+        fired.add(n);
+        latch.countDown();
+      });
+    }
+
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+
+    final List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      expected.add(i);
+    }
+    assertThat(new ArrayList<>(fired), is(expected));
+  }
+
+  @Test
+  public void cancel() throws InterruptedException {
+    final AtomicInteger fired = new AtomicInteger();
+    final List<Scheduler.Task> tasks = new ArrayList<>();
+
+    for (int i = 0; i < 10000; i++) {
+      tasks.add(scheduler.schedule(50 + i % 100, fired::incrementAndGet));
+    }
+    for (int i = 0; i < tasks.size(); i += 2) {
+      tasks.get(i).cancel();
+    }
+
+    Thread.sleep(400);
+    assertThat(fired.get(), is(5000));
+  }
+
+  @Test
+  public void failingTask() throws InterruptedException {
+    final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+
+    try (HashedWheelScheduler failing =
+             new HashedWheelScheduler(5, 8, (thread, err) -> errors.add(err))) {
+      failing.schedule(10, () -> {
+        throw new IllegalStateException("boom");
+      });
+      failing.schedule(20, latch::countDown);
+
+      // the wheel keeps running:
+      assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    assertThat(errors.size(), is(1));
+    assertThat(errors.peek().getMessage(), is("boom"));
+  }
+
+  @Test
+  public void sleep() {
+    final long now = System.currentTimeMillis();
+
+    final Unit result = IO.sleep(scheduler, 200).run();
+
+    assertThat(result, is(Unit.unit));
+    assertThat(System.currentTimeMillis() - now >= 200, is(true));
+  }
+
+  @Test
+  public void tick() {
+    final long now = System.currentTimeMillis();
+
+    final Integer ticks = Stream.tick(scheduler, 20)
+        .take(10)
+        .foldLeft(0, (acc, u) -> acc + 1)
+        .run();
+
+    assertThat(ticks, is(10));
+    assertThat(System.currentTimeMillis() - now >= 200, is(true));
+  }
+
+  @Test
+  public void fixedRate() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(20);
+    final long start = System.currentTimeMillis();
+
+    final Scheduler.Task task = scheduler.scheduleAtFixedRate(10, 10, () -> {
+      latch.countDown();
+      // slow task doesn't make the schedule drift:
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+    task.cancel();
+    final long elapsed = System.currentTimeMillis() - start;
+
+    assertThat(elapsed >= 190 && elapsed < 280, is(true));
+  }
+}
@@ -9,17 +9,27 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static com.github.lpld.jeff.IO.IO;
 import static com.github.lpld.jeff.data.Or.Left;
 import static com.github.lpld.jeff.data.Or.Right;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
@@ -259,4 +269,600 @@ public class IOTest extends IOTestBase {
 
     io.run();
   }
+
+  @Test
+  public void leftNestedBinds() {
+
+    IO<Integer> io = IO.pure(0);
+
+    for (int i = 0; i < 100000; i++) {
+      io = io.flatMap(x -> IO.pure(x + 1));
+
+      if (i % 1000 == 0) {
+        io = io
+            .flatMap(x -> IO.<Integer>fail(() -> new IllegalStateException("" + x)))
+            .recover(err -> Optional.of(Integer.parseInt(err.getMessage())));
+      }
+    }
+
+    assertThat(io.run(), is(100000));
+  }
+
+  @Test
+  public void mapChain() {
+    IO<Integer> io = IO.delay(() -> 1);
+
+    for (int i = 0; i < 100000; i++) {
+      io = io.map(x -> x * 3 % 1000003);
+    }
+
+    final IO<String> failing = io
+        .map(x -> x + 1)
+        .map(x -> {
+          if (x > 0) {
+            throw new IllegalStateException("fail" + x);
+          }
+          return x;
+        })
+        .map(x -> "unreachable")
+        .recover(err -> Optional.of(err.getMessage()));
+
+    int expected = 1;
+    for (int i = 0; i < 100000; i++) {
+      expected = expected * 3 % 1000003;
+    }
+
+    assertThat(io.run(), is(expected));
+    assertThat(failing.run(), is("fail" + (expected + 1)));
+  }
+
+  @Test
+  public void runSync() {
+    final Thread current = Thread.currentThread();
+
+    final IO<Thread> io = IO.delay(Thread::currentThread)
+        .flatMap(t -> IO.pure(t).map(Fn.id()));
+
+    assertThat(io.run(), is(current));
+
+    final IO<Thread> forked = io.chain(IO.forked(Resources.executor(0))).chain(io);
+    assertThat(forked.run() == current, is(false));
+  }
+
+  @Test
+  public void runSyncCheckedError() {
+    thrown.expect(WrappedError.class);
+    thrown.expectCause(instanceOf(IOException.class));
+
+    IO.fail(IOException::new).run();
+  }
+
+  @Test
+  public void runSyncCheckedErrorAfterFork() {
+    thrown.expect(WrappedError.class);
+    thrown.expectCause(instanceOf(IOException.class));
+
+    IO.unit.fork(Resources.executor(0)).chain(IO.fail(IOException::new)).run();
+  }
+
+  @Test
+  public void syncAsyncStackSafety() {
+    IO<Integer> io = IO.pure(0);
+
+    for (int i = 0; i < 100000; i++) {
+      io = io.flatMap(x -> IO.async(cb -> cb.run(Right(x + 1))));
+    }
+
+    assertThat(io.run(), is(100000));
+  }
+
+  @Test
+  public void asyncCallbackCalledTwice() {
+    final AtomicInteger counter = new AtomicInteger();
+
+    final Integer result = IO.<Integer>async(cb -> {
+      cb.run(Right(1));
+      cb.run(Right(2));
+      cb.run(Left(new IllegalStateException()));
+    })
+        .fork(Resources.executor(0))
+        .then(x -> IO(counter::incrementAndGet))
+        .run();
+
+    assertThat(result, is(1));
+    assertThat(counter.get(), is(1));
+  }
+
+  @Test
+  public void cancellationIsNeverLost() throws Exception {
+
+    for (int i = 0; i < 10000; i++) {
+      final AtomicInteger registered = new AtomicInteger();
+      final AtomicInteger cancelled = new AtomicInteger();
+
+      // this IO never completes by itself, so the only way to complete it is cancellation:
+      final IO<Unit> io = IO.delay(() -> registered.get())
+          .chain(IO.cancellable(cb -> {
+            registered.incrementAndGet();
+            return IO(cancelled::incrementAndGet);
+          }));
+
+      final CancellableIO task = CancellableIO.create();
+      final CountDownLatch start = new CountDownLatch(1);
+
+      Resources.executor(i % Resources.size()).execute(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        task.cancel();
+      });
+
+      start.countDown();
+      final CompletableFuture<Unit> result = IORun.runAsync(io, task);
+
+      try {
+        result.get(5, TimeUnit.SECONDS);
+        throw new AssertionError("Cancelled IO must not complete successfully");
+      } catch (CancellationException expected) {
+        // ok
+      }
+
+      assertThat(cancelled.get(), is(registered.get()));
+    }
+  }
+
+  @Test
+  public void cancelActionFailed() throws Exception {
+    final IO<Unit> io = IO.cancellable(cb -> IO.fail(() -> new IOException("cleanup failed")));
+
+    final CancellableIO task = CancellableIO.create();
+    final CompletableFuture<Unit> result = IORun.runAsync(io, task);
+    task.cancel();
+
+    try {
+      result.get(5, TimeUnit.SECONDS);
+      throw new AssertionError("Cancelled IO must not complete successfully");
+    } catch (CancellationException expected) {
+      // the error of the cancel action is not lost:
+      assertThat(expected.getCause(), is(instanceOf(IOException.class)));
+    }
+  }
+
+  @Test
+  public void startJoin() {
+    final IO<Integer> slow = IO.sleep(Resources.getScheduler(), 200).map(u -> 42);
+
+    final Integer result = slow.start(Resources.getMultiPool())
+        .flatMap(fiber -> IO.pure(1).flatMap(x -> fiber.join().map(r -> r + x)))
+        .run();
+
+    assertThat(result, is(43));
+  }
+
+  @Test
+  public void startJoinFailed() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("fiber failed");
+
+    IO.<Integer>fail(() -> new IllegalStateException("fiber failed"))
+        .start(Resources.getMultiPool())
+        .flatMap(Fiber::join)
+        .run();
+  }
+
+  @Test
+  public void cancelFiber() {
+    final AtomicInteger state = new AtomicInteger();
+
+    final IO<Integer> io = IO.sleep(Resources.getScheduler(), 300)
+        .chain(IO.delay(() -> state.incrementAndGet()));
+
+    final Or<Throwable, Integer> result = io.start(Resources.getMultiPool())
+        .flatMap(fiber -> IO.sleep(Resources.getScheduler(), 100)
+            .chain(fiber.cancel())
+            .chain(fiber.join().attempt()))
+        .then(IO.sleep(Resources.getScheduler(), 400))
+        .run();
+
+    assertThat(result.getLeft(), is(instanceOf(CancellationException.class)));
+    assertThat(state.get(), is(0));
+  }
+
+  @Test
+  public void cancelJoin() {
+    final RunningFiber<Integer> fiber = new RunningFiber<>();
+    final AtomicInteger resumed = new AtomicInteger();
+
+    final CancellableIOTask joiner = new CancellableIOTask() {
+      @Override
+      public boolean resumed() {
+        resumed.incrementAndGet();
+        return super.resumed();
+      }
+    };
+    final CompletableFuture<Integer> joined = IORun.runAsync(fiber.join(), joiner);
+    joiner.cancel();
+    assertThat(joined.isCancelled(), is(true));
+
+    // the cancelled joiner is not in the list of listeners anymore:
+    fiber.success(42);
+    assertThat(resumed.get(), is(0));
+    assertThat(fiber.join().run(), is(42));
+  }
+
+  @Test
+  public void cancelManyJoiners() {
+    final RunningFiber<Integer> fiber = new RunningFiber<>();
+    final AtomicInteger resumed = new AtomicInteger();
+
+    final List<CancellableIOTask> joiners = new ArrayList<>();
+    for (int i = 0; i < 100_000; i++) {
+      final CancellableIOTask joiner = new CancellableIOTask() {
+        @Override
+        public boolean resumed() {
+          resumed.incrementAndGet();
+          return super.resumed();
+        }
+      };
+      IORun.runAsync(fiber.join(), joiner);
+      joiners.add(joiner);
+    }
+    final CompletableFuture<Integer> alive = IORun.runAsync(fiber.join(), new CancellableIOTask());
+
+    // the oldest joiners are cancelled first, they are at the end of the list:
+    joiners.forEach(CancellableIOTask::cancel);
+
+    fiber.success(42);
+    assertThat(resumed.get(), is(0));
+    assertThat(alive.join(), is(42));
+  }
+
+  @Test
+  public void manyFibers() {
+    IO<List<Fiber<Integer>>> fibers = IO.pure(new ArrayList<>());
+
+    for (int i = 0; i < 10000; i++) {
+      final int n = i;
+      fibers = fibers.flatMap(list -> IO.delay(() -> n).fork().start(Resources.getMultiPool())
+          .map(f -> {
+            list.add(f);
+            return list;
+          }));
+    }
+
+    final Integer sum = fibers
+        .flatMap(list -> {
+          IO<Integer> acc = IO.pure(0);
+          for (Fiber<Integer> fiber : list) {
+            acc = acc.flatMap(a -> fiber.join().map(x -> a + x));
+          }
+          return acc;
+        })
+        .run();
+
+    assertThat(sum, is(10000 * 9999 / 2));
+  }
+
+  @Test
+  public void autoCede() {
+    // both fibers run on the same single-threaded executor:
+    final ExecutorService executor = Resources.executor(1);
+    final AtomicInteger counter = new AtomicInteger();
+
+    final Integer seenByShortTask = busyLoop(counter, 1000000)
+        .start(executor)
+        .flatMap(longTask -> IO.delay(counter::get)
+            .start(executor)
+            .flatMap(Fiber::join)
+            .then(longTask.join()))
+        .run();
+
+    assertThat(counter.get(), is(1000000));
+    assertThat(seenByShortTask < 1000000, is(true));
+  }
+
+  @Test
+  public void cede() {
+    final String executorThread = IO.forked(Resources.executor(2))
+        .chain(IO.delay(() -> Thread.currentThread().getName()))
+        .run();
+
+    final Thread current = Thread.currentThread();
+
+    // without executor cede is a no-op:
+    assertThat(IO.cede().chain(IO.delay(Thread::currentThread)).run(), is(current));
+
+    final String afterCede = IO.forked(Resources.executor(2))
+        .chain(IO.cede())
+        .chain(IO.delay(() -> Thread.currentThread().getName()))
+        .run();
+
+    assertThat(afterCede, is(executorThread));
+  }
+
+  private static IO<Integer> busyLoop(AtomicInteger counter, int max) {
+    return IO.delay(counter::incrementAndGet)
+        .flatMap(i -> i < max ? busyLoop(counter, max) : IO.pure(i));
+  }
+
+  @Test
+  public void parTraverse() {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+
+    final List<Integer> items = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      items.add(i);
+    }
+
+    final List<Integer> result = IO.parTraverse(Resources.getMultiPool(), 4, items, i ->
+        IO.delay(() -> maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max))
+            .chain(IO.sleep(Resources.getScheduler(), 200 - i))
+            .chain(IO.delay(() -> {
+              running.decrementAndGet();
+              return i * 2;
+            }))
+    ).run();
+
+    for (int i = 0; i < 200; i++) {
+      assertThat(result.get(i), is(i * 2));
+    }
+    assertThat(maxRunning.get() <= 4, is(true));
+  }
+
+  @Test
+  public void parTraverseSameThread() {
+    final List<Integer> items = new ArrayList<>();
+    for (int i = 0; i < 100_000; i++) {
+      items.add(i);
+    }
+
+    // items complete synchronously, which must not grow the stack:
+    final List<Integer> result = IO.parTraverse(Runnable::run, 4, items, IO::pure).run();
+    assertThat(result, equalTo(items));
+  }
+
+  @Test
+  public void parSequenceNFailure() {
+    final AtomicInteger completed = new AtomicInteger();
+    final List<IO<Integer>> ios = new ArrayList<>();
+
+    for (int i = 0; i < 20; i++) {
+      final int n = i;
+      ios.add(IO.sleep(Resources.getScheduler(), 100 + n * 10)
+                  .chain(IO.delay(() -> {
+                    if (n == 3) {
+                      throw new IllegalStateException("failed " + n);
+                    }
+                    return completed.incrementAndGet();
+                  })));
+    }
+
+    final Or<Throwable, List<Integer>> result =
+        IO.parSequenceN(Resources.getMultiPool(), 10, ios).attempt()
+            .then(IO.sleep(Resources.getScheduler(), 500))
+            .run();
+
+    assertThat(result.getLeft().getMessage(), is("failed 3"));
+    // items that were still sleeping when the failure happened are cancelled:
+    assertThat(completed.get() < 19, is(true));
+  }
+
+  @Test
+  public void raceAll() {
+    final AtomicInteger completed = new AtomicInteger();
+    final List<IO<Integer>> ios = new ArrayList<>();
+
+    for (int i = 0; i < 5; i++) {
+      final int n = i;
+      ios.add(IO.sleep(Resources.getScheduler(), 400 - n * 50)
+                  .chain(IO.delay(() -> {
+                    completed.incrementAndGet();
+                    return n;
+                  })));
+    }
+    // failures don't win the race:
+    ios.add(IO.fail(() -> new IllegalStateException()));
+
+    final Integer result = IO.raceAll(Resources.getMultiPool(), ios)
+        .then(IO.sleep(Resources.getScheduler(), 500))
+        .run();
+
+    assertThat(result, is(4));
+    assertThat(completed.get(), is(1));
+  }
+
+  @Test
+  public void raceAllFailed() {
+    final List<IO<Integer>> ios = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      final int n = i;
+      ios.add(IO.sleep(Resources.getScheduler(), n * 10)
+                  .chain(IO.fail(() -> new IllegalStateException("failed " + n))));
+    }
+
+    final Throwable error = IO.raceAll(Resources.getMultiPool(), ios).attempt().run().getLeft();
+
+    assertThat(error.getMessage(), is("failed 0"));
+    // the errors are not modified:
+    assertThat(error.getSuppressed().length, is(0));
+  }
+
+  @Test
+  public void hedge() {
+    final VirtualScheduler scheduler = new VirtualScheduler();
+    final AtomicInteger started = new AtomicInteger();
+    final AtomicInteger completed = new AtomicInteger();
+
+    // the first copy is slow, all the following ones are fast:
+    final IO<Integer> io = IO.delay(started::incrementAndGet)
+        .flatMap(n -> IO.sleep(scheduler, n == 1 ? 1000 : 50)
+            .chain(IO.delay(() -> {
+              completed.incrementAndGet();
+              return n;
+            })));
+
+    final Integer result = scheduler.run(IO.hedge(io, 150, 3, scheduler, scheduler));
+
+    assertThat(result, is(2));
+    assertThat(scheduler.currentTimeMillis(), is(200L));
+
+    // the first copy has been cancelled:
+    scheduler.advanceBy(2000);
+    assertThat(started.get(), is(2));
+    assertThat(completed.get(), is(1));
+  }
+
+  @Test
+  public void hedgeNotNeeded() {
+    final VirtualScheduler scheduler = new VirtualScheduler();
+    final AtomicInteger started = new AtomicInteger();
+
+    final Integer result = scheduler.run(
+        IO.hedge(IO.delay(started::incrementAndGet), 100, 3, scheduler, scheduler));
+    assertThat(result, is(1));
+
+    // the timer has been cancelled:
+    scheduler.advanceBy(1000);
+    assertThat(started.get(), is(1));
+  }
+
+  @Test
+  public void hedgeFailed() {
+    final VirtualScheduler scheduler = new VirtualScheduler();
+    final AtomicInteger started = new AtomicInteger();
+
+    final IO<Integer> io = IO.delay(started::incrementAndGet)
+        .flatMap(n -> IO.sleep(scheduler, 150)
+            .chain(IO.<Integer>fail(() -> new IllegalStateException("failed " + n))));
+
+    final Throwable error =
+        scheduler.run(IO.hedge(io, 50, 1, scheduler, scheduler).attempt()).getLeft();
+
+    assertThat(started.get(), is(2));
+    assertThat(scheduler.currentTimeMillis(), is(200L));
+    assertThat(error.getMessage(), is("failed 1"));
+    // the errors are not modified:
+    assertThat(error.getSuppressed().length, is(0));
+  }
+
+  @Test
+  public void hedgeAfterFailure() {
+    final VirtualScheduler scheduler = new VirtualScheduler();
+    final AtomicInteger started = new AtomicInteger();
+
+    // the first copy fails right away, the next one is started without waiting for the delay:
+    final IO<Integer> io = IO.delay(started::incrementAndGet)
+        .flatMap(n -> n == 1 ? IO.<Integer>fail(() -> new IllegalStateException("failed"))
+                             : IO.pure(n));
+
+    final Integer result = scheduler.run(IO.hedge(io, 5000, 2, scheduler, scheduler));
+
+    assertThat(result, is(2));
+    assertThat(started.get(), is(2));
+    assertThat(scheduler.currentTimeMillis(), is(0L));
+  }
+
+  @Test
+  public void hedgeTracked() {
+    final VirtualScheduler scheduler = new VirtualScheduler();
+    final LatencyTracker tracker = new LatencyTracker(0.5, 10, 100);
+
+    // latencies are measured with the clock of the scheduler:
+    scheduler.run(IO.hedge(IO.sleep(scheduler, 30).chain(IO.pure(1)), tracker, 1, scheduler,
+                           scheduler));
+    assertThat(tracker.percentile(), is(30L));
+  }
+
+  @Test
+  public void latencyTracker() {
+    final LatencyTracker tracker = new LatencyTracker(0.9, 10, 42);
+    assertThat(tracker.percentile(), is(42L));
+
+    for (int i = 1; i <= 20; i++) {
+      tracker.record(i);
+    }
+    // only the last 10 samples (11..20) are taken into account:
+    assertThat(tracker.percentile(), is(19L));
+  }
+
+  @Test
+  public void timeout() {
+    final Scheduler scheduler = Scheduler.of(Resources.getScheduler());
+    final AtomicInteger state = new AtomicInteger();
+
+    final Or<Throwable, Integer> result = IO.sleep(scheduler, 500)
+        .chain(IO.delay(state::incrementAndGet))
+        .timeout(scheduler, 100)
+        .attempt()
+        .then(IO.sleep(scheduler, 600))
+        .run();
+
+    assertThat(result.getLeft(), is(instanceOf(TimeoutException.class)));
+    // the IO has been cancelled:
+    assertThat(state.get(), is(0));
+  }
+
+  @Test
+  public void timeoutNotReached() {
+    final Scheduler scheduler = Scheduler.of(Resources.getScheduler());
+
+    final Integer result = IO.sleep(scheduler, 100)
+        .chain(IO.pure(42))
+        .timeout(scheduler, 1000)
+        .run();
+
+    assertThat(result, is(42));
+  }
+
+  @Test
+  public void timeoutTo() {
+    final Scheduler scheduler = Scheduler.of(Resources.getScheduler());
+
+    final Integer result = IO.<Integer>never()
+        .timeoutTo(scheduler, 100, IO.delay(() -> 42))
+        .map(i -> i + 1)
+        .run();
+
+    assertThat(result, is(43));
+  }
+
+  @Test
+  public void timeoutKeepsExecutor() {
+    final Scheduler scheduler = Scheduler.of(Resources.getScheduler());
+    final ExecutorService pool =
+        Executors.newSingleThreadExecutor(r -> new Thread(r, "timeout-pool"));
+    final AtomicReference<String> ceded = new AtomicReference<>();
+
+    try {
+      final String fallback = IO.forked(pool)
+          .chain(IO.sleep(scheduler, 10)
+                     // the target is resumed on the timer thread, cede brings it back:
+                     .chain(IO.cede())
+                     .chain(IO.delay(() -> ceded.set(Thread.currentThread().getName())))
+                     .chain(IO.<String>never())
+                     .timeoutTo(scheduler, 100, IO.delay(() -> Thread.currentThread().getName())))
+          .run();
+
+      assertThat(ceded.get(), is("timeout-pool"));
+      assertThat(fallback, is("timeout-pool"));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void timeoutFailed() {
+    final Scheduler scheduler = Scheduler.of(Resources.getScheduler());
+
+    final Or<Throwable, Integer> result = IO.sleep(scheduler, 50)
+        .chain(IO.<Integer>fail(IOException::new))
+        .timeout(scheduler, 1000)
+        .attempt()
+        .run();
+
+    assertThat(result.getLeft(), is(instanceOf(IOException.class)));
+  }
 }
@@ -0,0 +1,159 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Or;
+import com.github.lpld.jeff.data.Unit;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author leopold
+ * @since 16/10/26
+ */
+public class QueueTest {
+
+  private final ExecutorService pool = Executors.newFixedThreadPool(4);
+  private final VirtualScheduler scheduler = new VirtualScheduler();
+
+  @Test
+  public void takeWaitsForOffer() {
+    final Queue<Integer> queue = Queue.bounded(1);
+
+    final Integer result = scheduler.run(
+        IO.sleep(scheduler, 1000).chain(queue.offer(42)).start(pool)
+            .chain(queue.take())
+    );
+
+    assertThat(result, is(42));
+    assertThat(scheduler.currentTimeMillis(), is(1000L));
+  }
+
+  @Test
+  public void boundedBackpressure() {
+    final Queue<Integer> queue = Queue.bounded(2);
+    final AtomicInteger maxSize = new AtomicInteger();
+
+    final List<Integer> result = Stream.ints(0, 10_000).boxed()
+        .toQueue(queue)
+        .start(pool)
+        .chain(Stream.fromQueue(queue)
+                   .mapEval(i -> queue.size().map(size -> {
+                     maxSize.accumulateAndGet(size, Math::max);
+                     return i;
+                   }))
+                   .take(10_000)
+                   .toList())
+        .run();
+
+    assertThat(result, equalTo(range(0, 10_000)));
+    assertThat(maxSize.get() <= 2, is(true));
+  }
+
+  @Test
+  public void manyProducersAndConsumers() {
+    final Queue<Integer> queue = Queue.bounded(16);
+    final Queue<Long> sums = Queue.unbounded();
+
+    IO<Unit> producers = IO.unit;
+    IO<Unit> consumers = IO.unit;
+    for (int i = 0; i < 4; i++) {
+      producers = producers.chain(Stream.ints(0, 5_000).boxed().toQueue(queue).start(pool))
+          .map(f -> Unit.unit);
+      // every consumer takes exactly 5000 values, one by one:
+      consumers = consumers.chain(Stream.eval(queue.take()).repeat().take(5_000)
+                                      .foldLeft(0L, (acc, n) -> acc + n)
+                                      .flatMap(sums::offer)
+                                      .start(pool))
+          .map(f -> Unit.unit);
+    }
+
+    final Long total = producers.chain(consumers)
+        .chain(Stream.fromQueue(sums).take(4).foldLeft(0L, Long::sum))
+        .run();
+
+    assertThat(total, is(4 * 12_497_500L));
+  }
+
+  @Test
+  public void droppingAndSliding() {
+    final Queue<Integer> dropping = Queue.dropping(3);
+    final Queue<Integer> sliding = Queue.sliding(3);
+
+    final List<Integer> dropped = Stream.ints(0, 10).boxed().toQueue(dropping)
+        .chain(Stream.fromQueue(dropping).take(3).toList())
+        .run();
+    assertThat(dropped, equalTo(range(0, 3)));
+
+    final List<Integer> slid = Stream.ints(0, 10).boxed().toQueue(sliding)
+        .chain(Stream.fromQueue(sliding).take(3).toList())
+        .run();
+    assertThat(slid, equalTo(range(7, 10)));
+  }
+
+  @Test
+  public void unbounded() {
+    final Queue<Integer> queue = Queue.unbounded();
+
+    final Integer size = Stream.ints(0, 100_000).boxed().toQueue(queue)
+        .chain(queue.size())
+        .run();
+    assertThat(size, is(100_000));
+
+    assertThat(queue.poll().run(), equalTo(Optional.of(0)));
+  }
+
+  @Test
+  public void cancelTake() {
+    final Queue<Integer> queue = Queue.bounded(1);
+
+    final Or<Throwable, Integer> result =
+        scheduler.run(queue.take().timeout(scheduler, 100).attempt());
+    assertThat(result.getLeft(), is(instanceOf(TimeoutException.class)));
+
+    // the cancelled taker doesn't steal the value:
+    assertThat(queue.offer(1).chain(queue.poll()).run(), equalTo(Optional.of(1)));
+  }
+
+  @Test
+  public void cancelTakeDuringHandOver() {
+    final Queue<Integer> queue = Queue.bounded(1);
+
+    // the taker is cancelled right after the value is handed over to it, before it is resumed:
+    final CancellableIOTask taker = new CancellableIOTask() {
+      @Override
+      public boolean resumed() {
+        cancel();
+        return super.resumed();
+      }
+    };
+    final CompletableFuture<Integer> taken = new CompletableFuture<>();
+    IORun.runAsync(queue.take(), taker, Callback.completing(taken));
+
+    queue.offer(1).run();
+
+    assertThat(taken.isCancelled(), is(true));
+    // the value is put back into the queue:
+    assertThat(queue.poll().run(), equalTo(Optional.of(1)));
+  }
+
+  private static List<Integer> range(int from, int until) {
+    final List<Integer> list = new ArrayList<>();
+    for (int i = from; i < until; i++) {
+      list.add(i);
+    }
+    return list;
+  }
+}
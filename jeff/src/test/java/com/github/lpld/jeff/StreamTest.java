@@ -4,12 +4,20 @@ import com.github.lpld.jeff.LList.LCons;
 import com.github.lpld.jeff.LList.LNil;
 import com.github.lpld.jeff.data.Pr;
 import com.github.lpld.jeff.data.Unit;
+import com.github.lpld.jeff.functions.Fn;
 
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -88,6 +96,128 @@ public class StreamTest {
     assertThat(stream2.toLList().run(), equalTo(stream1.toLList().run()));
   }
 
+  @Test
+  public void testAppendNested() {
+    Stream<Integer> left = Nil();
+    Stream<Integer> right = Nil();
+    for (int i = 0; i < 100_000; i++) {
+      left = left.append(Stream(i));
+      right = Stream(i).append(right);
+    }
+
+    assertThat(left.foldLeft(0L, (sum, i) -> sum + i).run(), is(4999950000L));
+    assertThat(right.foldLeft(0L, (sum, i) -> sum + i).run(), is(4999950000L));
+    assertThat(left.drop(99_998).toLList().run(), equalTo(LList.of(99_998, 99_999)));
+    assertThat(right.take(2).toLList().run(), equalTo(LList.of(99_999, 99_998)));
+  }
+
+  @Test
+  public void testFlatMapLarge() {
+    final Long sum = Stream.ints(0, 1000).boxed()
+        .flatMap(i -> Stream.ints(0, 1000).boxed().map(j -> i * 1000 + j))
+        .foldLeft(0L, (acc, i) -> acc + i)
+        .run();
+
+    assertThat(sum, is(499999500000L));
+  }
+
+  @Test
+  public void testPureHeads() {
+    final AtomicInteger mapped = new AtomicInteger();
+    final Stream<Integer> stream = Cons(1, Cons(2, Cons(3, Nil())))
+        .map(i -> mapped.incrementAndGet() * 10);
+
+    assertThat(mapped.get(), is(0));
+    assertThat(stream.take(2).toLList().run(), equalTo(LList.of(10, 20)));
+    assertThat(mapped.get(), is(2));
+
+    final Integer count = Stream
+        .unfold(0, i -> i < 100_000 ? Optional.of(Pr(i, i + 1)) : Optional.empty())
+        .filter(i -> i % 2 == 0)
+        .map(i -> i + 1)
+        .foldLeft(0, (n, i) -> n + 1)
+        .run();
+
+    assertThat(count, is(50_000));
+  }
+
+  @Test
+  public void testFusion() {
+    final AtomicInteger evaluated = new AtomicInteger();
+    final Stream<Integer> source = Stream.ints(0, 100_000).boxed()
+        .append(Stream.eval(IO(evaluated::incrementAndGet), IO(evaluated::incrementAndGet)));
+
+    final LList<Integer> result = source
+        .map(i -> i + 1)
+        .filter(i -> i % 3 == 0)
+        .map(i -> i / 3)
+        .drop(10)
+        .takeWhile(i -> i < 20_000)
+        .dropWhile(i -> i < 19_990)
+        .take(5)
+        .toLList()
+        .run();
+
+    assertThat(result, equalTo(LList.of(19_990, 19_991, 19_992, 19_993, 19_994)));
+    assertThat(evaluated.get(), is(0));
+
+    // map doesn't change the number of elements, so dropped elements are not evaluated:
+    final Integer last = source.map(i -> i * 2).drop(100_001).headOption().run().get();
+    assertThat(last, is(2));
+    assertThat(evaluated.get(), is(1));
+
+    final Long sum = source.map(i -> (long) i).filter(i -> i % 2 == 1).foldLeft(0L, Long::sum).run();
+    assertThat(sum, is(2500000000L + 3));
+  }
+
+  @Test
+  public void testFusionLaziness() {
+    final AtomicInteger mapped = new AtomicInteger();
+
+    Stream.integers()
+        .map(i -> mapped.incrementAndGet())
+        .mapEval(IO::pure)
+        .take(1)
+        .drain()
+        .run();
+    assertThat(mapped.get(), is(1));
+
+    // the functions are not applied to the elements that are not needed:
+    final Stream<Integer> divided = Stream.of(1, 0).map(x -> 10 / x);
+    assertThat(divided.headOption().run(), equalTo(Optional.of(10)));
+    assertThat(divided.exists(x -> x == 10).run(), is(true));
+
+    // the values before the failed element are emitted:
+    final LList<Integer> beforeFailure = Stream.ints(0, 10).boxed()
+        .map(i -> 10 / (5 - i))
+        .mapEval(IO::pure)
+        .take(5)
+        .toLList()
+        .run();
+    assertThat(beforeFailure, equalTo(LList.of(2, 2, 3, 5, 10)));
+  }
+
+  @Test
+  public void testLongDrain() {
+    final AtomicInteger counter = new AtomicInteger();
+
+    Stream.eval(IO(counter::incrementAndGet))
+        .repeat()
+        .takeWhile(i -> i < 1_000_000)
+        .drain()
+        .run();
+
+    assertThat(counter.get(), is(1_000_000));
+
+    final List<Integer> list = Stream.iterate(() -> Optional.of(counter.incrementAndGet()))
+        .take(300_000)
+        .toList()
+        .run();
+
+    assertThat(list.size(), is(300_000));
+    assertThat(list.get(299_999), is(1_300_000));
+  }
+
   @Test
   public void testRepeat() {
     final Stream<Integer> repeat = Stream(1, 2).repeat();
@@ -389,6 +519,204 @@ public class StreamTest {
 
   }
 
+  @Test
+  public void testChunks() {
+    final Stream<Integer> stream = Stream.ChunkCons(
+        Chunk.of(1, 2, 3, 4),
+        SCons(pure(5), Stream.chunk(Chunk.of(6, 7, 8, 9, 10)))
+    );
+
+    assertThat(stream.toLList().run(), equalTo(LList.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10)));
+    assertThat(stream.map(i -> i * 10).filter(i -> i % 20 == 0).toLList().run(),
+               equalTo(LList.of(20, 40, 60, 80, 100)));
+    assertThat(stream.take(6).toLList().run(), equalTo(LList.of(1, 2, 3, 4, 5, 6)));
+    assertThat(stream.take(2).toLList().run(), equalTo(LList.of(1, 2)));
+    assertThat(stream.drop(3).take(4).toLList().run(), equalTo(LList.of(4, 5, 6, 7)));
+    assertThat(stream.drop(5).toLList().run(), equalTo(LList.of(6, 7, 8, 9, 10)));
+    assertThat(stream.takeWhile(i -> i < 3).toLList().run(), equalTo(LList.of(1, 2)));
+    assertThat(stream.takeWhile(i -> i < 7, true).toLList().run(),
+               equalTo(LList.of(1, 2, 3, 4, 5, 6, 7)));
+    assertThat(stream.dropWhile(i -> i < 7).toLList().run(), equalTo(LList.of(7, 8, 9, 10)));
+    assertThat(stream.foldLeft(0, (a, b) -> a + b).run(), is(55));
+    assertThat(stream.scanLeft(0, (a, b) -> a + b).drop(8).toLList().run(),
+               equalTo(LList.of(45, 55)));
+    assertThat(stream.reverse().take(3).toLList().run(), equalTo(LList.of(10, 9, 8)));
+    assertThat(stream.mapEval(i -> IO(() -> -i)).drop(8).toLList().run(),
+               equalTo(LList.of(-9, -10)));
+    assertThat(stream.flatMap(i -> Stream.of(i, i)).take(5).toLList().run(),
+               equalTo(LList.of(1, 1, 2, 2, 3)));
+  }
+
+  @Test
+  public void testChunksLaziness() {
+    final AtomicInteger mapped = new AtomicInteger();
+
+    final Stream<Integer> stream = Stream.ChunkCons(Chunk.of(1, 2, 3), Stream.of(4, 5, 6))
+        .map(i -> {
+          mapped.incrementAndGet();
+          return i;
+        });
+
+    // nothing is evaluated until the stream is run:
+    assertThat(mapped.get(), is(0));
+    assertThat(stream.take(4).toLList().run(), equalTo(LList.of(1, 2, 3, 4)));
+    // take is applied before the mapping, so the rest of the chunk is not mapped:
+    assertThat(mapped.get(), is(4));
+  }
+
+  @Test
+  public void testChunkFailure() {
+    final Stream<Integer> stream = Stream.of(1, 2, 0, 4).scanLeft(0, (acc, i) -> acc + 10 / i);
+
+    // the values before the failed element are emitted:
+    assertThat(stream.take(2).toLList().run(), equalTo(LList.of(10, 15)));
+    assertThat(stream.headOption().run(), equalTo(Optional.of(10)));
+    assertThat(stream.toLList().attempt().run().getLeft(),
+               is(instanceOf(ArithmeticException.class)));
+  }
+
+  @Test
+  public void testBigChunk() {
+    final List<Integer> list = new ArrayList<>();
+    for (int i = 0; i < 1_000_000; i++) {
+      list.add(i);
+    }
+
+    final Long sum = Stream.ofAll(list)
+        .map(i -> (long) i)
+        .filter(i -> i % 2 == 0)
+        .foldLeft(0L, (a, b) -> a + b)
+        .run();
+
+    assertThat(sum, is(249999500000L));
+  }
+
+  @Test
+  public void testLazySources() {
+    final AtomicInteger pulled = new AtomicInteger();
+    final Iterator<Integer> endless = new Iterator<Integer>() {
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public Integer next() {
+        return pulled.incrementAndGet();
+      }
+    };
+
+    final Stream<Integer> stream = Stream.fromIterator(endless);
+    assertThat(pulled.get(), is(0));
+    assertThat(stream.take(3).toLList().run(), equalTo(LList.of(1, 2, 3)));
+    assertThat(pulled.get() <= 1024, is(true));
+
+    final Set<Integer> set = new HashSet<>(Arrays.asList(1, 2, 3));
+    final Stream<Integer> fromSet = Stream.ofAll(set);
+    set.add(4);
+    // the set is read only when the stream is evaluated, and it can be evaluated again:
+    assertThat(fromSet.foldLeft(0, Integer::sum).run(), is(10));
+    assertThat(fromSet.foldLeft(0, Integer::sum).run(), is(10));
+
+    final Integer[] array = new Integer[5000];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = i;
+    }
+    assertThat(Stream.ofAll(array).drop(4998).toLList().run(), equalTo(LList.of(4998, 4999)));
+    assertThat(Stream.ofAll(Arrays.asList(array)).foldLeft(0, Integer::sum).run(), is(12497500));
+
+    final Integer sum = Stream
+        .fromSpliterator(java.util.stream.IntStream.range(0, 5000).boxed().spliterator())
+        .foldLeft(0, Integer::sum)
+        .run();
+    assertThat(sum, is(12497500));
+  }
+
+  @Test
+  public void testIntStream() {
+    final Long sum = Stream.ints(0, 10_000_000)
+        .filter(i -> i % 2 == 0)
+        .asLongStream()
+        .map(i -> i * 3)
+        .sum()
+        .run();
+
+    assertThat(sum, is(74999985000000L));
+
+    final int[] array = Stream.ints(0, 5000)
+        .drop(1020)
+        .take(10)
+        .map(i -> -i)
+        .toArray()
+        .run();
+
+    assertThat(array, is(new int[]{-1020, -1021, -1022, -1023, -1024,
+                                   -1025, -1026, -1027, -1028, -1029}));
+
+    assertThat(IntStream.of().count().run(), is(0L));
+    assertThat(Stream.ints(0, 3000).count().run(), is(3000L));
+
+    // a closed range can end with the max value:
+    final int[] last = IntStream.rangeClosed(Integer.MAX_VALUE - 2, Integer.MAX_VALUE)
+        .toArray()
+        .run();
+    assertThat(last, is(new int[]{Integer.MAX_VALUE - 2, Integer.MAX_VALUE - 1,
+                                  Integer.MAX_VALUE}));
+  }
+
+  @Test
+  public void testPrimitiveTakeDrop() {
+    // the bounds fall inside of the chunks and on their edges:
+    assertThat(Stream.longs(0, 5000).drop(1024).take(2048).count().run(), is(2048L));
+    assertThat(Stream.longs(0, 5000).drop(1000).take(3000).sum().run(),
+               is(LongStream.range(1000, 4000).sum().run()));
+    assertThat(Stream.ints(0, 5000).take(0).count().run(), is(0L));
+    assertThat(Stream.ints(0, 5000).drop(5000).count().run(), is(0L));
+    assertThat(Stream.ints(0, 5000).drop(-1).take(6000).count().run(), is(5000L));
+
+    final double[] doubles = DoubleStream.range(0, 10_000, 0.5)
+        .drop(3)
+        .take(4)
+        .toArray()
+        .run();
+    assertThat(doubles, is(new double[]{1.5, 2.0, 2.5, 3.0}));
+  }
+
+  @Test
+  public void testDoubleRange() {
+    assertThat(DoubleStream.range(0, 1, 0.1).count().run(), is(10L));
+    assertThat(DoubleStream.range(0, 1, 0.1).toArray().run()[9], is(0.9));
+    assertThat(DoubleStream.range(0, 3, 1).toArray().run(), is(new double[]{0, 1, 2}));
+    assertThat(DoubleStream.range(1, 1, 1).count().run(), is(0L));
+    assertThat(DoubleStream.range(0, 10_000, 0.25).count().run(), is(40_000L));
+  }
+
+  @Test
+  public void testPrimitiveConversions() {
+    final LList<Integer> boxed = Stream.ints(1, 6).boxed().toLList().run();
+    assertThat(boxed, is(equalTo(LList.of(1, 2, 3, 4, 5))));
+
+    final Integer lengths = Stream("a", "bb", "ccc")
+        .append(Stream.eval(IO(() -> "dddd")))
+        .mapToInt(String::length)
+        .sum()
+        .run();
+    assertThat(lengths, is(10));
+
+    final Double doubled = Stream.doubles(1.5, 2.5, 3.5)
+        .map(d -> d * 2)
+        .fold(0, Double::sum)
+        .run();
+    assertThat(doubled, is(15.0));
+
+    final LList<String> indexed = Stream("a", "b", "c")
+        .zipWithIndex()
+        .map(p -> p._1 + p._2)
+        .toLList()
+        .run();
+    assertThat(indexed, is(equalTo(LList.of("a0", "b1", "c2"))));
+  }
+
   @Test
   public void testSleep() {
     final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
@@ -399,6 +727,51 @@ public class StreamTest {
         .run();
   }
 
+  @Test
+  public void tickAtFixedRate() {
+    final Scheduler scheduler = Scheduler.of(Executors.newSingleThreadScheduledExecutor());
+
+    final long start = System.currentTimeMillis();
+    Stream.tickAtFixedRate(scheduler, 50)
+        .take(10)
+        .mapEval(u -> IO(() -> Thread.sleep(30)))
+        .drain()
+        .run();
+    final long elapsed = System.currentTimeMillis() - start;
+
+    // processing time does not delay the ticks:
+    assertThat(elapsed >= 500 && elapsed < 700, is(true));
+  }
+
+  @Test
+  public void tickAtFixedRateMissed() {
+    final Scheduler scheduler = Scheduler.of(Executors.newSingleThreadScheduledExecutor());
+
+    final Fn<MissedTicks, Long> run = missed -> {
+      final AtomicInteger counter = new AtomicInteger();
+      final long start = System.currentTimeMillis();
+      Stream.tickAtFixedRate(scheduler, 50, missed)
+          .take(10)
+          // the second element takes a long time to process:
+          .mapEval(u -> IO(() -> Thread.sleep(counter.incrementAndGet() == 2 ? 230 : 0)))
+          .drain()
+          .run();
+      return System.currentTimeMillis() - start;
+    };
+
+    // missed ticks are emitted immediately:
+    final long burst = run.ap(MissedTicks.BURST);
+    assertThat(burst >= 500 && burst < 600, is(true));
+
+    // missed ticks are dropped, the schedule stays the same (last tick at 650):
+    final long skip = run.ap(MissedTicks.SKIP);
+    assertThat(skip >= 620 && skip < 670, is(true));
+
+    // missed ticks are dropped, the schedule is shifted (last tick at 680):
+    final long delay = run.ap(MissedTicks.DELAY);
+    assertThat(delay >= 670, is(true));
+  }
+
   @Test
   public void testMerge() {
     final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
@@ -433,6 +806,237 @@ public class StreamTest {
 //        .drain().run();
 //  }
 
+  @Test
+  public void testMergeValues() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    final Stream<Integer> s1 = Stream.tick(scheduler, 30).take(5).map(u -> 1);
+    final Stream<Integer> s2 = Stream(2, 2, 2).append(Stream.eval(IO(() -> 2)));
+
+    final Integer sum = Stream.merge(scheduler, s1, s2).foldLeft(0, Integer::sum).run();
+    assertThat(sum, is(13));
+  }
+
+  @Test
+  public void testParEvalMap() {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+
+    final List<Integer> result = Stream.ints(0, 50).boxed()
+        .parEvalMap(pool, 4, i ->
+            IO.delay(() -> maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max))
+                .chain(IO.sleep(scheduler, (i % 5) * 10))
+                .chain(IO.delay(() -> {
+                  running.decrementAndGet();
+                  return i * 2;
+                })))
+        .toList()
+        .run();
+
+    assertThat(result.size(), is(50));
+    for (int i = 0; i < 50; i++) {
+      assertThat(result.get(i), is(i * 2));
+    }
+    assertThat(maxRunning.get() <= 4, is(true));
+  }
+
+  @Test
+  public void testParEvalMapUnordered() {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    final List<Integer> result = Stream(300, 10, 200, 100)
+        .parEvalMapUnordered(pool, 4, i ->
+            IO.sleep(scheduler, i).chain(IO.pure(i)))
+        .toList()
+        .run();
+
+    assertThat(result, equalTo(Arrays.asList(10, 100, 200, 300)));
+  }
+
+  @Test
+  public void testParEvalMapTake() {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final CountDownLatch waiting = new CountDownLatch(3);
+    final AtomicInteger cancelled = new AtomicInteger();
+
+    final List<Integer> result = Stream.ints(0, 100).boxed()
+        .parEvalMap(pool, 4, i -> i == 0
+                                  ? IO.delay(() -> {
+                                    waiting.await();
+                                    return i;
+                                  })
+                                  : IO.<Integer>cancellable(cb -> {
+                                    waiting.countDown();
+                                    return IO.delay(cancelled::incrementAndGet);
+                                  }))
+        .take(1)
+        .toList()
+        .run();
+    assertThat(result, equalTo(Collections.singletonList(0)));
+
+    // the evaluations that never complete are cancelled when the consumer stops:
+    assertThat(cancelled.get() >= 3, is(true));
+  }
+
+  @Test
+  public void testParEvalMapFailure() {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    final AtomicInteger completed = new AtomicInteger();
+
+    final IO<List<Integer>> io = Stream.ints(0, 20).boxed()
+        .parEvalMap(pool, 5, i ->
+            IO.sleep(scheduler, 50 + i * 10).chain(IO.delay(() -> {
+              if (i == 3) {
+                throw new IllegalStateException("failed " + i);
+              }
+              completed.incrementAndGet();
+              return i;
+            })))
+        .toList();
+
+    try {
+      io.run();
+      throw new AssertionError("The stream should have failed");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is("failed 3"));
+    }
+    assertThat(completed.get() < 20, is(true));
+  }
+
+  @Test
+  public void testMergeAll() {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    final List<Stream<Integer>> sources = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      final int source = i;
+      sources.add(Stream.tick(scheduler, 5).take(10).map(u -> source));
+    }
+    sources.add(Stream.ints(0, 100_000).boxed().map(i -> -1));
+
+    final List<Integer> result = Stream.mergeAll(pool, sources).toList().run();
+    assertThat(result.size(), is(100_200));
+
+    // the elements of every source keep their order:
+    final int[] counts = new int[20];
+    result.stream().filter(i -> i >= 0).forEach(i -> counts[i]++);
+    for (int count : counts) {
+      assertThat(count, is(10));
+    }
+  }
+
+  @Test
+  public void testMergeTake() throws InterruptedException {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    final AtomicInteger pulled = new AtomicInteger();
+
+    final List<Integer> result = Stream
+        .merge(pool,
+               Stream.tick(scheduler, 5).map(u -> pulled.incrementAndGet()),
+               Stream.tick(scheduler, 5).map(u -> pulled.incrementAndGet()))
+        .take(2)
+        .toList()
+        .run();
+    assertThat(result.size(), is(2));
+
+    // the fibers are cancelled, and don't fill the queue up after the consumer has stopped:
+    Thread.sleep(200);
+    assertThat(pulled.get() < 10, is(true));
+  }
+
+  @Test
+  public void testMergeStopEarly() throws InterruptedException {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    final AtomicInteger pulled = new AtomicInteger();
+
+    final Stream<Integer> merged = Stream
+        .merge(pool,
+               Stream.tick(scheduler, 5).map(u -> pulled.incrementAndGet()),
+               Stream.tick(scheduler, 5).map(u -> pulled.incrementAndGet()));
+
+    // none of these reach the end of the stream, but all of them cancel the fibers:
+    assertThat(merged.headOption().run().isPresent(), is(true));
+    assertThat(merged.exists(n -> n > 1).run(), is(true));
+    assertThat(merged.filter(n -> n > 0).take(3).toList().run().size(), is(3));
+
+    Thread.sleep(200);
+    assertThat(pulled.get() < 20, is(true));
+  }
+
+  @Test
+  public void testParJoin() {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    final AtomicInteger open = new AtomicInteger();
+    final AtomicInteger maxOpen = new AtomicInteger();
+
+    final Stream<Stream<Integer>> streams = Stream.ints(0, 10).boxed().map(i -> Stream
+        .eval(IO(() -> maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max)))
+        .append(Stream.tick(scheduler, 5).take(3).map(u -> i))
+        .append(Stream.eval(IO(open::decrementAndGet)))
+        .filter(n -> false)
+        .append(Stream(i)));
+
+    final Set<Integer> result = new HashSet<>(Stream.parJoin(pool, 3, streams).toList().run());
+    assertThat(result.size(), is(10));
+    assertThat(maxOpen.get() <= 3, is(true));
+
+    final IO<List<Integer>> failing = Stream.parJoin(pool, 2, Stream(
+        Stream.tick(scheduler, 5).map(u -> 1),
+        Stream.eval(IO.sleep(scheduler, 20).chain(IO(() -> {
+          throw new IllegalStateException("failed");
+        })))
+    )).toList();
+
+    try {
+      failing.run();
+      throw new AssertionError("The stream should have failed");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is("failed"));
+    }
+  }
+
+  @Test
+  public void testPull() {
+    final Stream<Integer> stream = Stream(1, 2, 3)
+        .append(Stream.eval(IO(() -> 4), IO(() -> 5)))
+        .append(Stream.ints(6, 3000).boxed());
+
+    final LList<Integer> diffs = stream
+        .through(StreamTest::differences)
+        .filter(d -> d != 1)
+        .toLList()
+        .run();
+    assertThat(diffs, equalTo(LList.of()));
+
+    final LList<String> zipped = Stream
+        .zipWith(stream.drop(2990), Stream("a", "b").append(Stream.eval(IO(() -> "c"))),
+                 (i, s) -> s + i)
+        .toLList()
+        .run();
+    assertThat(zipped, equalTo(LList.of("a2991", "b2992", "c2993")));
+  }
+
+  private static Stream<Integer> differences(Pull<Integer> pull) {
+    return Defer(pull.hasNext().map(has -> has ? differences(pull.next(), pull) : Nil()));
+  }
+
+  private static Stream<Integer> differences(int prev, Pull<Integer> pull) {
+    return Defer(pull.hasNext().map(has -> {
+      if (!has) {
+        return Nil();
+      }
+      final int next = pull.next();
+      return Cons(next - prev, differences(next, pull));
+    }));
+  }
+
   @Test
   public void testZip() {
     final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
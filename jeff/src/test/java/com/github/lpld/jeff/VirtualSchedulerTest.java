@@ -0,0 +1,149 @@
+package com.github.lpld.jeff;
+
+import com.github.lpld.jeff.data.Or;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author leopold
+ * @since 16/10/26
+ */
+public class VirtualSchedulerTest {
+
+  private final VirtualScheduler scheduler = new VirtualScheduler();
+
+  @Test
+  public void sleep() {
+    final long start = System.currentTimeMillis();
+
+    final Integer result = scheduler.run(IO.sleep(scheduler, 3_600_000).chain(IO.pure(42)));
+
+    assertThat(result, is(42));
+    assertThat(scheduler.currentTimeMillis(), is(3_600_000L));
+    assertThat(System.currentTimeMillis() - start < 1000, is(true));
+  }
+
+  @Test
+  public void hoursOfTicks() {
+    final Integer ticks = scheduler.run(
+        Stream.tick(scheduler, 1000)
+            .take(36_000)
+            .foldLeft(0, (n, t) -> n + 1)
+    );
+
+    assertThat(ticks, is(36_000));
+    assertThat(scheduler.currentTimeMillis(), is(36_000_000L));
+  }
+
+  @Test
+  public void fixedRate() {
+    scheduler.run(
+        Stream.tickAtFixedRate(scheduler, 1000)
+            .take(10)
+            // processing doesn't delay the ticks:
+            .mapEval(t -> IO.sleep(scheduler, 300))
+            .drain()
+    );
+
+    assertThat(scheduler.currentTimeMillis(), is(10_300L));
+  }
+
+  @Test
+  public void fixedRateStopped() {
+    final AtomicInteger fired = new AtomicInteger();
+    final Scheduler counting = new Scheduler() {
+      @Override
+      public Task schedule(long millis, Runnable task) {
+        return scheduler.schedule(millis, () -> {
+          fired.incrementAndGet();
+          task.run();
+        });
+      }
+
+      @Override
+      public Clock clock() {
+        return scheduler.clock();
+      }
+    };
+
+    scheduler.run(Stream.tickAtFixedRate(counting, 1000).take(3).drain());
+    assertThat(fired.get(), is(3));
+
+    // the timer is cancelled when the stream is no longer consumed:
+    scheduler.advanceBy(10_000);
+    assertThat(fired.get(), is(3));
+  }
+
+  @Test
+  public void timeout() {
+    final Or<Throwable, Object> result =
+        scheduler.run(IO.never().timeout(scheduler, 5000).attempt());
+
+    assertThat(result.getLeft(), is(instanceOf(TimeoutException.class)));
+    assertThat(scheduler.currentTimeMillis(), is(5000L));
+  }
+
+  @Test
+  public void deterministicOrder() {
+    final List<String> events = new ArrayList<>();
+
+    final IO<Object> first = IO.sleep(scheduler, 200).chain(IO.delay(() -> events.add("first")));
+    final IO<Object> second = IO.sleep(scheduler, 100).chain(IO.delay(() -> events.add("second")));
+
+    scheduler.run(IO.both(scheduler, first, second));
+
+    assertThat(events, is(Arrays.asList("second", "first")));
+    assertThat(scheduler.currentTimeMillis(), is(200L));
+  }
+
+  @Test
+  public void advanceBy() {
+    final List<Integer> fired = new ArrayList<>();
+    scheduler.schedule(100, () -> fired.add(1));
+    scheduler.schedule(300, () -> fired.add(3));
+    scheduler.schedule(200, () -> fired.add(2));
+
+    scheduler.advanceBy(250);
+    assertThat(fired, is(Arrays.asList(1, 2)));
+    assertThat(scheduler.currentTimeMillis(), is(250L));
+
+    scheduler.advanceBy(1000);
+    assertThat(fired, is(Arrays.asList(1, 2, 3)));
+    assertThat(scheduler.currentTimeMillis(), is(1250L));
+  }
+
+  @Test
+  public void failingTask() {
+    final List<Integer> fired = new ArrayList<>();
+    scheduler.schedule(100, () -> {
+      throw new IllegalStateException("boom");
+    });
+    scheduler.schedule(200, () -> fired.add(2));
+
+    try {
+      scheduler.advanceBy(1000);
+      fail("the failure of the task is not rethrown");
+    } catch (IllegalStateException err) {
+      assertThat(err.getMessage(), is("boom"));
+    }
+    assertThat(fired, is(Collections.emptyList()));
+
+    assertThat(scheduler.currentTimeMillis(), is(100L));
+
+    // the rest of the timers are still there:
+    scheduler.advanceBy(1000);
+    assertThat(fired, is(Collections.singletonList(2)));
+  }
+}